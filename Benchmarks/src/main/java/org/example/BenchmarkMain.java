@@ -0,0 +1,26 @@
+package org.example;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запуск: java -jar Benchmarks/target/benchmarks.jar [опции JMH] [регулярка бенчмарков].
+ * Принимает те же опции, что и стандартный запуск JMH, но всегда подключает
+ * профилировщик GC, чтобы рядом со временем печатались gc.alloc.rate и
+ * gc.alloc.rate.norm — сколько байт выделяет одна операция.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+import commands.Executor;
+import data.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.SessionManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подготовка UDP-ответа: кодирование, сжатие и нарезка на кадры в буферах из пулов —
+ * всё, что сервер делает с результатом команды до отправки. Ответ — вывод show
+ * для коллекции заданного размера.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ChunkingBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int bands;
+
+    @Param({"true", "false"})
+    public boolean deflate;
+
+    private Response response;
+
+    @Setup
+    public void setUp() {
+        Executor executor = new Executor(new InMemoryDatabaseManager(bands), new SessionManager(60_000));
+        response = new Response(executor.show());
+    }
+
+    @Benchmark
+    public int encodeFrames() {
+        BufferPool.Lease[] frames = ServerMain.encodeFrames(1L, deflate, response);
+        int bytes = 0;
+        for (BufferPool.Lease frame : frames) {
+            bytes += frame.buffer().remaining();
+            frame.release();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,107 @@
+package org.example;
+
+import commands.Executor;
+import data.MusicBand;
+import data.Response;
+import data.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.SessionManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Команды Executor на коллекции из 10 тыс., 100 тыс. и 1 млн групп в памяти.
+ * Полный вывод (show, print_*) растёт с размером коллекции, постраничный и
+ * точечные изменения — нет; разница между ними видна по этим трём размерам.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ExecutorBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private Executor executor;
+    private User owner;
+    private String middleCursor;
+    private long nextKey;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = new Executor(new InMemoryDatabaseManager(size), new SessionManager(TimeUnit.MINUTES.toMillis(30)));
+        owner = new User(InMemoryDatabaseManager.OWNER_ID, "bench");
+        // Курсор из середины коллекции: страница с него стоит столько же, сколько с начала
+        String cursor = null;
+        for (int skipped = 0; skipped < size / 2; skipped += Executor.MAX_PAGE_SIZE) {
+            cursor = executor.showPage(Executor.MAX_PAGE_SIZE, cursor).getNextCursor();
+        }
+        middleCursor = cursor;
+        nextKey = size + 1L;
+    }
+
+    @Benchmark
+    public String info() {
+        return executor.info();
+    }
+
+    @Benchmark
+    public String show() {
+        return executor.show();
+    }
+
+    @Benchmark
+    public String printAscending() {
+        return executor.print_ascending();
+    }
+
+    @Benchmark
+    public String printDescending() {
+        return executor.print_descending();
+    }
+
+    @Benchmark
+    public String filterStartsWithName() {
+        return executor.filter_starts_with_name("Nimbus");
+    }
+
+    @Benchmark
+    public Response showFirstPage() {
+        return executor.showPage(100, null);
+    }
+
+    @Benchmark
+    public Response showMiddlePage() {
+        return executor.showPage(100, middleCursor);
+    }
+
+    @Benchmark
+    public Response printAscendingPage() {
+        return executor.printPage(false, 100, null);
+    }
+
+    /**
+     * Вставка и удаление одного ключа: размер коллекции не меняется между вызовами.
+     */
+    @Benchmark
+    public String insertAndRemove() {
+        long key = nextKey++;
+        MusicBand band = InMemoryDatabaseManager.band(key);
+        executor.insert(key, band, owner);
+        return executor.remove_key(key, owner);
+    }
+}
@@ -0,0 +1,135 @@
+package org.example;
+
+import data.Coordinates;
+import data.MusicBand;
+import data.MusicGenre;
+import data.Studio;
+import utils.DatabaseManager;
+
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хранилище в памяти вместо PostgreSQL: Executor работает с ним так же, как с БД,
+ * поэтому бенчмарки измеряют только команды и коллекцию, а не сеть до базы.
+ */
+public class InMemoryDatabaseManager extends DatabaseManager {
+    public static final int OWNER_ID = 1;
+
+    private static final String[] NAMES = {
+            "Aurora", "Basalt", "Cobalt", "Dune", "Ember", "Fjord", "Granite", "Halcyon",
+            "Iris", "Juniper", "Kestrel", "Lumen", "Monsoon", "Nimbus", "Obsidian", "Prism"
+    };
+
+    private final int initialSize;
+    // Строка таблицы сводится к владельцу и row_version
+    private final Map<Long, Row> rows = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    /**
+     * @param initialSize сколько групп вернёт loadCollection
+     */
+    public InMemoryDatabaseManager(int initialSize) {
+        this.initialSize = initialSize;
+    }
+
+    /**
+     * Детерминированная группа: одинаковый номер даёт одинаковые поля.
+     */
+    public static MusicBand band(long number) {
+        Random random = new Random(number);
+        MusicBand band = new MusicBand(
+                NAMES[random.nextInt(NAMES.length)] + " " + number,
+                new Coordinates(random.nextDouble() * 1000, random.nextInt(1000)),
+                1 + random.nextInt(10),
+                "Generated band #" + number,
+                MusicGenre.values()[random.nextInt(MusicGenre.values().length)],
+                new Studio("Studio " + random.nextInt(100)),
+                OWNER_ID);
+        band.setCreationDate(ZonedDateTime.now().minusMinutes(random.nextInt(1_000_000)));
+        return band;
+    }
+
+    @Override
+    public TreeMap<Long, MusicBand> loadCollection() {
+        TreeMap<Long, MusicBand> collection = new TreeMap<>();
+        for (long key = 1; key <= initialSize; key++) {
+            MusicBand band = band(key);
+            band.setId(ids.incrementAndGet());
+            collection.put(key, band);
+            rows.put(key, new Row(OWNER_ID, 0));
+        }
+        return collection;
+    }
+
+    @Override
+    public boolean insertMusicBand(Long key, MusicBand band, int ownerId) {
+        if (rows.putIfAbsent(key, new Row(ownerId, 0)) != null) {
+            return false;
+        }
+        band.setId(ids.incrementAndGet());
+        band.setVersion(0);
+        return true;
+    }
+
+    @Override
+    public boolean updateMusicBand(Long key, MusicBand band, int ownerId, long expectedVersion) {
+        Row expected = new Row(ownerId, expectedVersion);
+        return rows.replace(key, expected, new Row(ownerId, expectedVersion + 1));
+    }
+
+    @Override
+    public boolean removeMusicBand(Long key, int userId, long expectedVersion) {
+        return rows.remove(key, new Row(userId, expectedVersion));
+    }
+
+    @Override
+    public Set<Long> removeMusicBands(Map<Long, Long> expectedVersions, int userId) {
+        Set<Long> removed = new HashSet<>();
+        expectedVersions.forEach((key, version) -> {
+            if (removeMusicBand(key, userId, version)) {
+                removed.add(key);
+            }
+        });
+        return removed;
+    }
+
+    @Override
+    public boolean isConnectionValid() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static final class Row {
+        private final int owner;
+        private final long version;
+
+        private Row(int owner, long version) {
+            this.owner = owner;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Row)) {
+                return false;
+            }
+            Row row = (Row) other;
+            return owner == row.owner && version == row.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * owner + Long.hashCode(version);
+        }
+    }
+}
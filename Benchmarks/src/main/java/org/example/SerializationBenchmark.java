@@ -0,0 +1,122 @@
+package org.example;
+
+import data.CommandWrapper;
+import network.WireCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование и разбор CommandWrapper туда и обратно: собственный формат WireCodec
+ * и, для сравнения, стандартная сериализация Java, которой протокол пользовался раньше.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    /**
+     * simple — команда без аргументов, insert — с группой, batch — пакет из 100 вставок.
+     */
+    @Param({"simple", "insert", "batch"})
+    public String shape;
+
+    private CommandWrapper wrapper;
+    private byte[] wireBytes;
+    private byte[] javaBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (shape) {
+            case "simple":
+                wrapper = command("show", null, 0);
+                break;
+            case "insert":
+                wrapper = command("insert", 42L, 42);
+                break;
+            case "batch":
+                List<CommandWrapper> commands = new ArrayList<>();
+                for (int i = 1; i <= 100; i++) {
+                    commands.add(command("insert", (long) i, i));
+                }
+                wrapper = CommandWrapper.batch(commands);
+                wrapper.setSessionToken("0123456789abcdef0123456789abcdef");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        wireBytes = WireCodec.encodeRequest(wrapper);
+        javaBytes = javaSerialize(wrapper);
+    }
+
+    private static CommandWrapper command(String name, Long key, long bandNumber) {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName(name);
+        wrapper.setKey(key);
+        wrapper.setSessionToken("0123456789abcdef0123456789abcdef");
+        if (key != null) {
+            wrapper.setMusicBand(InMemoryDatabaseManager.band(bandNumber));
+        }
+        return wrapper;
+    }
+
+    @Benchmark
+    public byte[] wireEncode() {
+        return WireCodec.encodeRequest(wrapper);
+    }
+
+    @Benchmark
+    public CommandWrapper wireDecode() throws IOException {
+        return WireCodec.decodeRequest(ByteBuffer.wrap(wireBytes));
+    }
+
+    @Benchmark
+    public CommandWrapper wireRoundTrip() throws IOException {
+        return WireCodec.decodeRequest(ByteBuffer.wrap(WireCodec.encodeRequest(wrapper)));
+    }
+
+    @Benchmark
+    public CommandWrapper javaRoundTrip() throws IOException, ClassNotFoundException {
+        return javaDeserialize(javaSerialize(wrapper));
+    }
+
+    @Benchmark
+    public CommandWrapper javaDecode() throws IOException, ClassNotFoundException {
+        return javaDeserialize(javaBytes);
+    }
+
+    private static byte[] javaSerialize(CommandWrapper wrapper) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(wrapper);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static CommandWrapper javaDeserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (CommandWrapper) in.readObject();
+        }
+    }
+}
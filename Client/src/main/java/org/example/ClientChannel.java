@@ -0,0 +1,263 @@
+package org.example;
+
+import data.ChangeEvent;
+import network.ChunkAssembler;
+import network.Frame;
+import network.WireCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Долгоживущий UDP-канал клиента. Запросы помечаются id, поэтому одновременно
+ * может выполняться сколько угодно команд: ответы сопоставляются по id
+ * в фоновом потоке приёма и могут приходить в любом порядке.
+ */
+public class ClientChannel implements MessageTransport {
+    public static final long DEFAULT_RESPONSE_TIMEOUT_MS = 5000;
+    private static final long CHUNK_TIMEOUT_MS = 300;
+    private static final int MAX_NACKS = 10;
+    // Повтор запроса, на который не пришло ничего: не раньше обычного времени ответа
+    // сервера под нагрузкой, дальше интервал удваивается
+    private static final long FIRST_RESEND_MS = 1000;
+    private static final int MAX_RESENDS = 4;
+    private static final long MAX_RETRY_AFTER_MS = 2000;
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final long responseTimeoutMs;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final Thread receiver;
+    private final Map<Long, PendingRequest> pending = new ConcurrentHashMap<>();
+    // Случайное начало, чтобы id запросов разных клиентов не пересекались
+    private final AtomicLong requestIds = new AtomicLong(ThreadLocalRandom.current().nextLong());
+    private volatile boolean open = true;
+    private volatile Consumer<List<ChangeEvent>> eventListener;
+
+    public ClientChannel(String host, int port) throws IOException {
+        this(host, port, DEFAULT_RESPONSE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param responseTimeoutMs сколько ждать ответа (или следующего фрагмента) до отказа
+     */
+    public ClientChannel(String host, int port, long responseTimeoutMs) throws IOException {
+        this.responseTimeoutMs = responseTimeoutMs;
+        this.channel = DatagramChannel.open();
+        this.selector = Selector.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+            channel.connect(new InetSocketAddress(host, port));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            selector.close();
+            throw e;
+        }
+        this.receiver = new Thread(this::receiveLoop, "client-receiver");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+    }
+
+    /**
+     * Задаёт обработчик изменений коллекции, присланных после команды watch.
+     * Вызывается в потоке приёма, поэтому не должен блокироваться.
+     */
+    public void setEventListener(Consumer<List<ChangeEvent>> listener) {
+        this.eventListener = listener;
+    }
+
+    /**
+     * Отправляет запрос и сразу возвращает future с собранными байтами ответа.
+     */
+    @Override
+    public CompletableFuture<byte[]> send(byte[] request) {
+        long requestId = requestIds.incrementAndGet();
+        ByteBuffer frame = Frame.encode(Frame.Type.REQUEST, Frame.FLAG_ACCEPTS_DEFLATE, requestId, request);
+        PendingRequest pendingRequest = new PendingRequest(requestId, frame);
+        if (!open) {
+            pendingRequest.future.completeExceptionally(new ClosedChannelException());
+            return pendingRequest.future;
+        }
+        if (request.length > Frame.MAX_PAYLOAD) {
+            pendingRequest.future.completeExceptionally(new ProtocolException("Request is too large for a datagram: "
+                    + request.length + " bytes (max " + Frame.MAX_PAYLOAD + "), split it or use the TCP transport"));
+            return pendingRequest.future;
+        }
+        pending.put(requestId, pendingRequest);
+        try {
+            channel.write(frame.duplicate());
+        } catch (IOException e) {
+            pending.remove(requestId);
+            pendingRequest.future.completeExceptionally(e);
+        }
+        return pendingRequest.future;
+    }
+
+    public int inFlight() {
+        return pending.size();
+    }
+
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(Frame.HEADER_SIZE + Frame.MAX_PAYLOAD);
+        while (open) {
+            try {
+                if (selector.select(CHUNK_TIMEOUT_MS) > 0) {
+                    selector.selectedKeys().clear();
+                    readFrames(buffer);
+                }
+                checkTimeouts();
+            } catch (PortUnreachableException e) {
+                failAll(new IOException("Server port is unreachable", e));
+            } catch (IOException e) {
+                if (open) {
+                    failAll(e);
+                }
+            }
+        }
+    }
+
+    private void readFrames(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (channel.read(buffer) > 0) {
+            buffer.flip();
+            try {
+                onFrame(Frame.decode(buffer));
+            } catch (ProtocolException e) {
+                System.err.println("Ignoring malformed datagram: " + e.getMessage());
+            }
+            buffer.clear();
+        }
+    }
+
+    private void onFrame(Frame frame) throws IOException {
+        if (frame.getType() == Frame.Type.EVENT) {
+            onEvents(frame);
+            return;
+        }
+        PendingRequest request = pending.get(frame.getRequestId());
+        if (request == null) {
+            return;
+        }
+        if (frame.getType() == Frame.Type.BUSY) {
+            // Сервер не принял запрос: повторим не раньше, чем он просит
+            request.busy = true;
+            request.retryAt = System.currentTimeMillis() + Math.min(MAX_RETRY_AFTER_MS, frame.getRetryAfterMillis());
+            return;
+        }
+        if (frame.getType() != Frame.Type.DATA) {
+            return;
+        }
+        request.busy = false;
+        request.lastActivity = System.currentTimeMillis();
+        request.nacks = 0;
+        if (request.assembler.add(frame)) {
+            pending.remove(frame.getRequestId());
+            channel.write(Frame.encodeAck(frame.getRequestId()));
+            try {
+                request.future.complete(request.assembler.assemble());
+            } catch (ProtocolException e) {
+                request.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void onEvents(Frame frame) throws ProtocolException {
+        Consumer<List<ChangeEvent>> listener = eventListener;
+        if (listener != null) {
+            // Тело кадра лежит в буфере приёма, разбираем до следующей датаграммы
+            listener.accept(WireCodec.decodeEvents(frame.getPayload()));
+        }
+    }
+
+    private void checkTimeouts() throws IOException {
+        long now = System.currentTimeMillis();
+        Iterator<PendingRequest> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingRequest request = iterator.next();
+            long idle = now - request.lastActivity;
+            if (idle >= responseTimeoutMs) {
+                iterator.remove();
+                request.future.completeExceptionally(new SocketTimeoutException(request.busy
+                        ? "Server is busy, request " + request.requestId + " was not accepted"
+                        : "Response " + request.requestId + " timed out"));
+            } else if (request.retryAt > 0) {
+                if (now >= request.retryAt) {
+                    request.retryAt = 0;
+                    channel.write(request.frame.duplicate());
+                }
+            } else if (request.assembler.hasStarted()) {
+                if (idle >= CHUNK_TIMEOUT_MS * (request.nacks + 1) && request.nacks < MAX_NACKS) {
+                    // Часть ответа пришла: просим переслать только недостающие фрагменты
+                    channel.write(Frame.encodeNack(request.requestId, request.assembler.missing()));
+                    request.nacks++;
+                }
+            } else if (idle >= FIRST_RESEND_MS * ((1L << (request.resends + 1)) - 1) && request.resends < MAX_RESENDS) {
+                // Не пришло ничего: повторяем запрос с тем же id. Пока исходный выполняется,
+                // сервер отбрасывает повтор, а на уже выполненный пересылает готовый ответ
+                channel.write(request.frame.duplicate());
+                request.resends++;
+            }
+        }
+    }
+
+    private void failAll(IOException e) {
+        Iterator<PendingRequest> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingRequest request = iterator.next();
+            iterator.remove();
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        selector.wakeup();
+        try {
+            receiver.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failAll(new ClosedChannelException());
+        selector.close();
+        channel.close();
+    }
+
+    private static final class PendingRequest {
+        private final long requestId;
+        private final ByteBuffer frame;
+        private final ChunkAssembler assembler;
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        // Изменяются только потоком приёма
+        private long lastActivity = System.currentTimeMillis();
+        private int nacks;
+        private int resends;
+        private boolean busy;
+        private long retryAt;
+
+        private PendingRequest(long requestId, ByteBuffer frame) {
+            this.requestId = requestId;
+            this.frame = frame;
+            this.assembler = new ChunkAssembler(requestId);
+        }
+    }
+}
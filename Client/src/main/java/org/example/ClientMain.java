@@ -1,27 +1,55 @@
 package org.example;
 
+import data.ChangeEvent;
 import data.CommandWrapper;
 import data.MusicBand;
+import data.Response;
 import utils.Console;
 
 import java.io.*;
 import java.net.*;
-import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ClientMain {
 
     private static String SERVER_HOST = "localhost";
     private static int SERVER_PORT = 12345;
 
-    private static String userLogin;
-    private static String userPasswordHash;
+    // Эти команды выполняются по локальной реплике после синхронизации с сервером
+    private static final Set<String> READ_COMMANDS = Set.of(
+            "info", "show", "print_ascending", "print_descending", "filter_starts_with_name");
+
+    // Ответы этих команд могут быть большими — их везём по TCP
+    private static final Set<String> BULK_COMMANDS = Set.of("execute_script");
+
+    // Подписка на сервере живёт минуту, продлеваем её вдвое чаще
+    private static final long WATCH_RENEW_SECONDS = 30;
+
+    // Вся сетевая часть и сессия — в LabaClient, здесь только консольный интерфейс
+    private static LabaClient client;
+    private static final CollectionReplica replica = new CollectionReplica();
+    private static ScheduledExecutorService watchRenewal;
+    // Трогается только потоком приёма ClientChannel
+    private static long lastEventVersion = -1;
 
     public static void main(String[] args) {
+        try (LabaClient labaClient = new LabaClient(SERVER_HOST, SERVER_PORT)) {
+            client = labaClient;
+            runSession();
+        } catch (IOException e) {
+            System.err.println("Cannot open connection to server: " + e.getMessage());
+        }
+    }
+
+    private static void runSession() {
         if (!authenticateUser()) {
             System.out.println("Shutting down...");
             return;
@@ -69,19 +97,18 @@ public class ClientMain {
                     }
                 }
 
-                Object response = sendCommandToServer(input, musicBand);
+                if (READ_COMMANDS.contains(input.command)) {
+                    readFromReplica(input);
+                    continue;
+                }
 
-                if (response instanceof ArrayList) {
-                    ArrayList<String> chunks = (ArrayList<String>) response;
-                    for (String chunk : chunks) {
-                        System.out.print(chunk);
-                    }
-                    System.out.println();
-                } else if (response instanceof Object[]) {
-                    Arrays.stream((Object[]) response).forEach(System.out::println);
-                } else {
-                    System.out.println(response);
+                if (input.command.equals(CommandWrapper.WATCH_COMMAND)) {
+                    watch(input);
+                    continue;
                 }
+
+                Response response = sendCommandToServer(input, musicBand);
+                System.out.println(response);
             } catch (IOException e) {
                 System.err.println("Server communication error: " + e.getMessage());
                 System.out.println("Retrying in 3 seconds...");
@@ -95,7 +122,7 @@ public class ClientMain {
         }
     }
 
-    private static String hashPassword(String password) {
+    static String hashPassword(String password) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-512");
             byte[] hash = digest.digest(password.getBytes());
@@ -165,74 +192,28 @@ public class ClientMain {
             }
 
             String passwordHash = hashPassword(password);
-            String commandName = choice.equalsIgnoreCase("r") ? "register" : "login";
 
-            Object response = sendAuthCommand(commandName, login, passwordHash);
-            System.out.println(response);
-
-            if (response.toString().contains("successfully") ||
-                    response.toString().contains("successful")) {
-                userLogin = login;
-                userPasswordHash = passwordHash;
-                return true;
-            }
-        } catch (IOException e){
-            System.err.println("Authenticate error: " + e.getMessage());
-        }
-        return false;
-    }
-
-    private static Object sendAuthCommand(String commandName, String login, String passwordHash) throws IOException {
-        try (DatagramChannel channel = DatagramChannel.open()) {
-            channel.configureBlocking(true);
-            channel.socket().setSoTimeout(5000); // 5 секунд таймаут на чтение
-
-            try {
-                channel.connect(new InetSocketAddress(SERVER_HOST, SERVER_PORT));
-
-                CommandWrapper wrapper = new CommandWrapper();
-                wrapper.setCommandName(commandName);
-                wrapper.setLogin(login);
-                wrapper.setPasswordHash(passwordHash);
-
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(baos);
-                oos.writeObject(wrapper);
-                oos.flush();
-
-                byte[] requestData = baos.toByteArray();
-                ByteBuffer buffer = ByteBuffer.wrap(requestData);
-                channel.write(buffer);
-
-                ByteBuffer responseBuffer = ByteBuffer.allocate(65536);
-                int bytesRead = channel.read(responseBuffer);
-
-                if (bytesRead == -1) {
-                    throw new IOException("Connection closed by server");
+            if (choice.equalsIgnoreCase("r")) {
+                Response response = await(client.register(login, passwordHash));
+                System.out.println(response.getText());
+                if (!response.getText().contains("successfully")) {
+                    return false;
                 }
-
-                responseBuffer.flip();
-                byte[] responseData = new byte[responseBuffer.remaining()];
-                responseBuffer.get(responseData);
-
-                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(responseData));
-                return ois.readObject();
-
-            } catch (SocketTimeoutException e) {
-                throw new IOException("Server did not respond within timeout", e);
-            } catch (PortUnreachableException e) {
-                throw new IOException("Server port is unreachable", e);
-            } catch (IOException e) {
-                if (e.getMessage() != null) {
-                    throw new IOException("Network error: " + e.getMessage(), e);
-                } else {
-                    throw new IOException("Unknown network error", e);
+                // После регистрации сразу входим, чтобы получить сессию
+                Response session = await(client.login(login, passwordHash));
+                if (session.getSessionToken() == null) {
+                    System.out.println(session.getText());
                 }
+                return client.isLoggedIn();
             }
 
-        } catch (ClassNotFoundException e) {
-            throw new IOException("Error deserializing response", e);
+            Response response = await(client.login(login, passwordHash));
+            System.out.println(response.getText());
+            return client.isLoggedIn();
+        } catch (IOException e){
+            System.err.println("Authenticate error: " + e.getMessage());
         }
+        return false;
     }
 
     private static String validateCommandInput(Console.CommandInput input) {
@@ -264,58 +245,105 @@ public class ClientMain {
         return null;
     }
 
-    private static Object sendCommandToServer(Console.CommandInput input, MusicBand musicBand) throws IOException {
-        try (DatagramChannel channel = DatagramChannel.open()) {
-            channel.configureBlocking(true);
-            channel.socket().setSoTimeout(5000);
-
-            try {
-                channel.connect(new InetSocketAddress(SERVER_HOST, SERVER_PORT));
-
-                CommandWrapper commandWrapper = createCommandWrapper(input, musicBand);
-                if (commandWrapper == null) {
-                    return "Error: Failed to create command wrapper";
-                }
-
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(baos);
-                oos.writeObject(commandWrapper);
-                oos.flush();
+    private static Response sendCommandToServer(Console.CommandInput input, MusicBand musicBand) throws IOException {
+        CommandWrapper commandWrapper = createCommandWrapper(input, musicBand);
+        if (commandWrapper == null) {
+            return new Response("Error: Failed to create command wrapper");
+        }
+        LabaClient.Transport transport = BULK_COMMANDS.contains(input.command)
+                ? LabaClient.Transport.STREAM : LabaClient.Transport.DATAGRAM;
+        return await(client.send(commandWrapper, transport));
+    }
 
-                byte[] requestData = baos.toByteArray();
-                ByteBuffer buffer = ByteBuffer.wrap(requestData);
-                channel.write(buffer);
+    /**
+     * Догоняет реплику до текущей версии коллекции и отвечает на команду по ней.
+     * Если с прошлого раза ничего не менялось, ответ сервера почти пустой.
+     */
+    private static void readFromReplica(Console.CommandInput input) throws IOException {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName(CommandWrapper.SYNC_COMMAND);
+        wrapper.setKey(replica.getVersion());
+        wrapper.setArgument(replica.getEpoch());
+
+        // Первый снимок — вся коллекция, последующие изменения обычно малы
+        LabaClient.Transport transport = replica.getVersion() < 0
+                ? LabaClient.Transport.STREAM : LabaClient.Transport.DATAGRAM;
+        Response response = await(client.send(wrapper, transport));
+        if (!response.isSync()) {
+            System.out.println(response);
+            return;
+        }
+        replica.apply(response.getDelta());
+        System.out.println(replica.execute(input.command, input.argument));
+    }
 
-                ByteBuffer responseBuffer = ByteBuffer.allocate(65536);
-                int bytesRead = channel.read(responseBuffer);
+    /**
+     * Подписывается на изменения коллекции. События печатаются по мере прихода,
+     * подписка продлевается в фоне, пока клиент работает.
+     */
+    private static void watch(Console.CommandInput input) throws IOException {
+        Response response = sendCommandToServer(input, null);
+        System.out.println(response);
+        if (response.getText() == null || !response.getText().startsWith("Watching") || watchRenewal != null) {
+            return;
+        }
+        client.setEventListener(ClientMain::printEvents);
+        watchRenewal = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "watch-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchRenewal.scheduleWithFixedDelay(ClientMain::renewWatch,
+                WATCH_RENEW_SECONDS, WATCH_RENEW_SECONDS, TimeUnit.SECONDS);
+    }
 
-                if (bytesRead == -1) {
-                    throw new IOException("Connection closed by server");
-                }
+    private static void renewWatch() {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName(CommandWrapper.WATCH_COMMAND);
+        client.send(wrapper).whenComplete((response, error) -> {
+            if (error != null) {
+                System.err.println("Failed to renew watch: " + error.getMessage());
+            }
+        });
+    }
 
-                responseBuffer.flip();
-                byte[] responseData = new byte[responseBuffer.remaining()];
-                responseBuffer.get(responseData);
+    private static void printEvents(List<ChangeEvent> events) {
+        for (ChangeEvent event : events) {
+            // События доставляются без гарантий: о пропуске сообщаем, чтобы пользователь перечитал коллекцию
+            if (lastEventVersion >= 0 && event.getVersion() > lastEventVersion + 1) {
+                System.out.println("[watch] missed " + (event.getVersion() - lastEventVersion - 1)
+                        + " change(s), run 'show' to resync");
+            }
+            if (event.getVersion() > lastEventVersion) {
+                lastEventVersion = event.getVersion();
+                System.out.println("[watch] " + event);
+            }
+        }
+    }
 
-                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(responseData));
-                return ois.readObject();
-            }catch (SocketTimeoutException e) {
-                throw new IOException("Server did not respond within timeout", e);
-            } catch (PortUnreachableException e) {
-                throw new IOException("Server port is unreachable", e);
-            } catch (IOException e) {
-                String errorMsg = e.getMessage();
-                if (errorMsg == null) {
-                    errorMsg = "Unknown network error";
-                } else if (errorMsg.contains("Connection refused")) {
-                    errorMsg = "Server refused connection (may be offline)";
-                } else if (errorMsg.contains("Network is unreachable")) {
-                    errorMsg = "Network is unreachable";
-                }
-                throw new IOException(errorMsg, e);
+    /**
+     * Консоль работает синхронно: ждём ответ и переводим сетевые ошибки в понятный текст.
+     */
+    private static Response await(CompletableFuture<Response> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SocketTimeoutException) {
+                throw new IOException("Server did not respond within timeout", cause);
+            }
+            String errorMsg = cause.getMessage();
+            if (errorMsg == null) {
+                errorMsg = "Unknown network error";
+            } else if (errorMsg.contains("Connection refused")) {
+                errorMsg = "Server refused connection (may be offline)";
+            } else if (errorMsg.contains("Network is unreachable")) {
+                errorMsg = "Network is unreachable";
             }
-        } catch (ClassNotFoundException e) {
-            throw new IOException("Error deserializing response", e);
+            throw new IOException(errorMsg, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for response", e);
         }
     }
 
@@ -324,9 +352,6 @@ public class ClientMain {
             CommandWrapper wrapper = new CommandWrapper();
             wrapper.setCommandName(input.command);
 
-            wrapper.setLogin(userLogin);
-            wrapper.setPasswordHash(userPasswordHash);
-
             switch (input.command) {
                 case "remove_lower":
                     wrapper.setMusicBand(musicBand);
@@ -0,0 +1,66 @@
+package org.example;
+
+import data.CollectionDelta;
+import data.MusicBand;
+import utils.CollectionFormatter;
+
+import java.time.ZonedDateTime;
+import java.util.TreeMap;
+
+/**
+ * Локальная копия коллекции. Перед каждой командой чтения клиент отправляет
+ * серверу свою версию и применяет полученные изменения, а ответ строит сам,
+ * так что нагрузка на сервер зависит от частоты изменений, а не от числа чтений.
+ */
+public class CollectionReplica {
+    private final TreeMap<Long, MusicBand> musicBands = new TreeMap<>();
+    private long epoch;
+    private long version = -1;
+    private ZonedDateTime initializationDate;
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return -1, пока реплика не получила первый снимок
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void apply(CollectionDelta delta) {
+        if (delta.isFull()) {
+            musicBands.clear();
+        }
+        musicBands.putAll(delta.getChanged());
+        for (Long key : delta.getRemoved()) {
+            musicBands.remove(key);
+        }
+        epoch = delta.getEpoch();
+        version = delta.getVersion();
+        initializationDate = delta.getInitializationDate();
+    }
+
+    /**
+     * Выполняет команду чтения по реплике.
+     *
+     * @return null, если команда не относится к чтению коллекции
+     */
+    public String execute(String command, String argument) {
+        switch (command) {
+            case "info":
+                return CollectionFormatter.info(initializationDate, musicBands);
+            case "show":
+                return CollectionFormatter.show(musicBands.values());
+            case "print_ascending":
+                return CollectionFormatter.printSorted(musicBands.values(), false);
+            case "print_descending":
+                return CollectionFormatter.printSorted(musicBands.values(), true);
+            case "filter_starts_with_name":
+                return CollectionFormatter.filterStartsWithName(musicBands.values(), argument);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package org.example;
+
+import data.ChangeEvent;
+import data.CommandWrapper;
+import data.Response;
+import network.Frame;
+import network.WireCodec;
+import network.WireWriter;
+import utils.SessionManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Асинхронный клиент сервера коллекции. Один экземпляр можно использовать из
+ * любого числа потоков: запросы уходят по общему каналу, в полёте одновременно
+ * не больше maxInFlight, остальные ждут в очереди. Сессия общая: после login
+ * токен подставляется во все команды, а истёкшая сессия продлевается повторным
+ * входом один раз на все ожидающие запросы.
+ * <p>
+ * Команды с большими ответами можно отправить по TCP ({@link Transport#STREAM}):
+ * соединение открывается в фоне при первом таком запросе, а если сервер его не принимает,
+ * запросы идут по UDP до следующей попытки подключения.
+ * <p>
+ * Future завершаются в потоке приёма канала, поэтому тяжёлую обработку ответа
+ * стоит переносить в свой пул через *Async-методы CompletableFuture.
+ */
+public class LabaClient implements Closeable {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+    private static final long STREAM_RETRY_MIN_MS = 1000;
+    private static final long STREAM_RETRY_MAX_MS = 60_000;
+    // Место под заголовок пакета в датаграмме: имя команды, токен сессии, число команд
+    private static final int BATCH_HEADER_RESERVE = 1024;
+    private static final int MAX_BATCH_PAYLOAD = Frame.MAX_PAYLOAD - BATCH_HEADER_RESERVE;
+    // Подключение блокирует поток до таймаута, поэтому у каждой попытки свой поток
+    private static final Executor CONNECTOR = task -> {
+        Thread thread = new Thread(task, "stream-connect");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    public enum Transport { DATAGRAM, STREAM }
+
+    private final String host;
+    private final int streamPort;
+    private final long timeoutMillis;
+    private final ClientChannel channel;
+    private StreamChannel stream;                            // под this
+    private CompletableFuture<MessageTransport> connecting;  // под this
+    private long streamRetryAt;                              // под this
+    private long streamRetryDelay = STREAM_RETRY_MIN_MS;     // под this
+    private boolean closed;                                  // под this
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<QueuedRequest> waiting = new ConcurrentLinkedQueue<>();
+
+    // Логин и хэш пароля хранятся только в памяти — для повторного входа
+    private volatile String login;
+    private volatile String passwordHash;
+    private volatile String sessionToken;
+    private CompletableFuture<Response> renewal; // под this
+
+    public LabaClient(String host, int port) throws IOException {
+        this(host, port, port, DEFAULT_MAX_IN_FLIGHT, ClientChannel.DEFAULT_RESPONSE_TIMEOUT_MS);
+    }
+
+    public LabaClient(String host, int port, int maxInFlight, long timeoutMillis) throws IOException {
+        this(host, port, port, maxInFlight, timeoutMillis);
+    }
+
+    /**
+     * @param streamPort      TCP-порт сервера для {@link Transport#STREAM}
+     * @param maxInFlight     сколько запросов может ждать ответа одновременно
+     * @param timeoutMillis   сколько ждать ответа на отправленный запрос
+     */
+    public LabaClient(String host, int port, int streamPort, int maxInFlight, long timeoutMillis) throws IOException {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.host = host;
+        this.streamPort = streamPort;
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = timeoutMillis;
+        this.channel = new ClientChannel(host, port, timeoutMillis);
+    }
+
+    public CompletableFuture<Response> register(String login, String passwordHash) {
+        return exchange(authCommand("register", login, passwordHash));
+    }
+
+    /**
+     * Входит и запоминает сессию. Ответ без токена означает отказ, его текст — причина.
+     */
+    public CompletableFuture<Response> login(String login, String passwordHash) {
+        return exchange(authCommand("login", login, passwordHash)).thenApply(response -> {
+            if (response.getSessionToken() != null) {
+                this.login = login;
+                this.passwordHash = passwordHash;
+                this.sessionToken = response.getSessionToken();
+            }
+            return response;
+        });
+    }
+
+    public boolean isLoggedIn() {
+        return sessionToken != null;
+    }
+
+    /**
+     * Отправляет команду от имени текущей сессии по UDP.
+     */
+    public CompletableFuture<Response> send(CommandWrapper wrapper) {
+        return send(wrapper, Transport.DATAGRAM);
+    }
+
+    public CompletableFuture<Response> send(CommandWrapper wrapper, Transport transport) {
+        String token = sessionToken;
+        wrapper.setSessionToken(token);
+        return exchange(wrapper, transport).thenCompose(response -> {
+            if (!SessionManager.SESSION_EXPIRED.equals(response.getText()) || login == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            return renewSession(token).thenCompose(renewed -> {
+                wrapper.setSessionToken(sessionToken);
+                return exchange(wrapper, transport);
+            });
+        });
+    }
+
+    /**
+     * Отправляет команды пакетами: каждый пакет помещается в одну датаграмму и содержит
+     * не больше {@link CommandWrapper#MAX_BATCH_SIZE} команд. Пакеты уходят по очереди,
+     * так что команды выполняются в исходном порядке; результаты собираются в один ответ.
+     * Если сервер отклонил пакет целиком (например, сессия не восстановилась), возвращается
+     * его ответ, а следующие пакеты не отправляются — уже выполненные остаются в силе.
+     */
+    public CompletableFuture<Response> sendBatch(List<CommandWrapper> commands) {
+        if (commands.isEmpty()) {
+            return send(CommandWrapper.batch(commands));
+        }
+        return sendBatchParts(splitBatch(commands), 0, new ArrayList<>(commands.size()));
+    }
+
+    private CompletableFuture<Response> sendBatchParts(List<List<CommandWrapper>> parts, int index,
+                                                       List<String> results) {
+        if (index == parts.size()) {
+            return CompletableFuture.completedFuture(Response.batch(results));
+        }
+        return send(CommandWrapper.batch(parts.get(index))).thenCompose(response -> {
+            if (!response.isBatch()) {
+                return CompletableFuture.completedFuture(response);
+            }
+            results.addAll(response.getResults());
+            return sendBatchParts(parts, index + 1, results);
+        });
+    }
+
+    /**
+     * Делит команды на пакеты по размеру в кодировке и по числу команд.
+     * Команда, которая одна не помещается в датаграмму, уходит отдельным пакетом
+     * и получит ошибку канала.
+     */
+    static List<List<CommandWrapper>> splitBatch(List<CommandWrapper> commands) {
+        List<List<CommandWrapper>> parts = new ArrayList<>();
+        List<CommandWrapper> part = new ArrayList<>();
+        int partSize = 0;
+        WireWriter writer = new WireWriter();
+        for (CommandWrapper command : commands) {
+            writer.reset();
+            WireCodec.writeCommandWrapper(writer, command);
+            int size = writer.size();
+            if (!part.isEmpty() && (partSize + size > MAX_BATCH_PAYLOAD || part.size() == CommandWrapper.MAX_BATCH_SIZE)) {
+                parts.add(part);
+                part = new ArrayList<>();
+                partSize = 0;
+            }
+            part.add(command);
+            partSize += size;
+        }
+        if (!part.isEmpty()) {
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /**
+     * Обработчик изменений коллекции после команды watch. Вызывается в потоке приёма.
+     */
+    public void setEventListener(Consumer<List<ChangeEvent>> listener) {
+        channel.setEventListener(listener);
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int queued() {
+        return waiting.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        synchronized (this) {
+            closed = true;
+            if (stream != null) {
+                stream.close();
+            }
+        }
+        QueuedRequest request;
+        while ((request = waiting.poll()) != null) {
+            request.future.completeExceptionally(new IOException("Client is closed"));
+        }
+    }
+
+    private static CommandWrapper authCommand(String commandName, String login, String passwordHash) {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName(commandName);
+        wrapper.setLogin(login);
+        wrapper.setPasswordHash(passwordHash);
+        return wrapper;
+    }
+
+    /**
+     * Повторный вход, общий для всех запросов, получивших отказ с одним и тем же токеном.
+     */
+    private synchronized CompletableFuture<Response> renewSession(String expiredToken) {
+        if (sessionToken != null && !sessionToken.equals(expiredToken)) {
+            return CompletableFuture.completedFuture(null); // сессию уже обновил другой запрос
+        }
+        if (renewal != null) {
+            return renewal;
+        }
+        CompletableFuture<Response> attempt = login(login, passwordHash);
+        renewal = attempt;
+        // Если вход уже завершился, обработчик выполнится сразу и снимет renewal
+        attempt.whenComplete((response, error) -> {
+            synchronized (this) {
+                if (renewal == attempt) {
+                    renewal = null;
+                }
+            }
+        });
+        return attempt;
+    }
+
+    private CompletableFuture<Response> exchange(CommandWrapper wrapper) {
+        return exchange(wrapper, Transport.DATAGRAM);
+    }
+
+    private CompletableFuture<Response> exchange(CommandWrapper wrapper, Transport transport) {
+        QueuedRequest request = new QueuedRequest(WireCodec.encodeRequest(wrapper), transport);
+        waiting.add(request);
+        drain();
+        return request.future;
+    }
+
+    /**
+     * Отправляет ожидающие запросы, пока есть свободные места в полёте.
+     */
+    private void drain() {
+        while (!waiting.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            QueuedRequest request = waiting.poll();
+            if (request == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            transport(request.transport).thenCompose(target -> target.send(request.data)).whenComplete((data, error) -> {
+                inFlight.decrementAndGet();
+                drain();
+                if (error != null) {
+                    request.future.completeExceptionally(error);
+                    return;
+                }
+                try {
+                    request.future.complete(WireCodec.decodeResponse(ByteBuffer.wrap(data)));
+                } catch (ProtocolException e) {
+                    request.future.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * TCP-соединение открывается при первом запросе и заново после обрыва. Подключение
+     * идёт в отдельном потоке: drain вызывается и из потока приёма UDP, который нельзя
+     * держать на таймауте connect. Запросы, пришедшие во время подключения, ждут его итога.
+     * Если подключиться не удалось, запросы идут по UDP, а следующая попытка будет
+     * через интервал, который удваивается после каждой неудачи.
+     */
+    private synchronized CompletableFuture<MessageTransport> transport(Transport transport) {
+        if (transport == Transport.DATAGRAM || System.currentTimeMillis() < streamRetryAt) {
+            return CompletableFuture.completedFuture(channel);
+        }
+        if (stream != null && stream.isOpen()) {
+            return CompletableFuture.completedFuture(stream);
+        }
+        if (connecting == null) {
+            connecting = CompletableFuture.supplyAsync(this::connectStream, CONNECTOR);
+        }
+        return connecting;
+    }
+
+    private MessageTransport connectStream() {
+        StreamChannel opened;
+        try {
+            opened = new StreamChannel(host, streamPort, timeoutMillis);
+        } catch (IOException e) {
+            synchronized (this) {
+                connecting = null;
+                streamRetryAt = System.currentTimeMillis() + streamRetryDelay;
+                System.err.println("TCP transport is unavailable (" + e.getMessage() + "), using UDP for "
+                        + streamRetryDelay + " ms");
+                streamRetryDelay = Math.min(STREAM_RETRY_MAX_MS, streamRetryDelay * 2);
+            }
+            return channel;
+        }
+        synchronized (this) {
+            connecting = null;
+            if (!closed) {
+                stream = opened;
+                streamRetryDelay = STREAM_RETRY_MIN_MS;
+                return opened;
+            }
+        }
+        try {
+            opened.close();
+        } catch (IOException e) {
+            System.err.println("Error closing TCP connection: " + e.getMessage());
+        }
+        return channel;
+    }
+
+    private static final class QueuedRequest {
+        private final byte[] data;
+        private final Transport transport;
+        private final CompletableFuture<Response> future = new CompletableFuture<>();
+
+        private QueuedRequest(byte[] data, Transport transport) {
+            this.data = data;
+            this.transport = transport;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package org.example;
+
+import data.CommandWrapper;
+import data.Coordinates;
+import data.MusicBand;
+import data.MusicGenre;
+import data.Response;
+import data.Studio;
+import utils.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный клиент: входит под N синтетическими пользователями и с заданной
+ * частотой отправляет смесь команд по UDP. Задержка считается от момента, когда
+ * запрос должен был уйти по расписанию, а не когда ушёл фактически, — так очередь
+ * на стороне генератора не прячет замедление сервера.
+ * <p>
+ * Параметры задаются как key=value:
+ * <pre>
+ * java -cp client.jar org.example.LoadGenerator host=localhost port=12345 users=20 rate=2000 \
+ *      duration=60 mix=insert:15,update:15,show:5,filter:55,remove:10 timeout=5000 inflight=64
+ * </pre>
+ * По окончании синтетические пользователи удаляют свои элементы командой clear (cleanup=false отключает).
+ */
+public class LoadGenerator {
+    private static final String USER_PREFIX = "load_user_";
+    private static final String USER_PASSWORD = "load-generator";
+    private static final long KEY_RANGE = 10_000_000L;
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private enum Operation {
+        INSERT("insert"), UPDATE("update"), SHOW("show"), FILTER("filter"), REMOVE("remove");
+
+        private final String alias;
+
+        Operation(String alias) {
+            this.alias = alias;
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final int users;
+    private final double rate;
+    private final long durationNanos;
+    private final long timeoutMillis;
+    private final int inFlightPerUser;
+    private final boolean cleanup;
+    private final Operation[] mix;
+
+    private final List<SyntheticUser> clients = new ArrayList<>();
+    private final Map<Operation, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong errorResponses = new AtomicLong();
+
+    private LoadGenerator(Map<String, String> options) {
+        this.host = options.getOrDefault("host", "localhost");
+        this.port = Integer.parseInt(options.getOrDefault("port", "12345"));
+        this.users = Integer.parseInt(options.getOrDefault("users", "10"));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "30")));
+        this.timeoutMillis = Long.parseLong(options.getOrDefault("timeout", "5000"));
+        this.inFlightPerUser = Integer.parseInt(options.getOrDefault("inflight", "64"));
+        this.cleanup = Boolean.parseBoolean(options.getOrDefault("cleanup", "true"));
+        this.mix = parseMix(options.getOrDefault("mix", "insert:15,update:15,show:5,filter:55,remove:10"));
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new LatencyHistogram());
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println("Ignoring argument '" + arg + "', expected key=value");
+                continue;
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        LoadGenerator generator;
+        try {
+            generator = new LoadGenerator(options);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            return;
+        }
+        try {
+            generator.run();
+        } catch (IOException e) {
+            System.err.println("Load generator failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            generator.closeClients();
+        }
+    }
+
+    /**
+     * Смесь вида insert:15,filter:85 превращается в таблицу с числом ячеек по весу операции;
+     * операция выбирается случайной ячейкой.
+     */
+    private static Operation[] parseMix(String spec) {
+        List<Operation> table = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] entry = part.trim().split(":");
+            if (entry.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry: " + part);
+            }
+            Operation operation = null;
+            for (Operation candidate : Operation.values()) {
+                if (candidate.alias.equals(entry[0].trim())) {
+                    operation = candidate;
+                }
+            }
+            if (operation == null) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + entry[0]);
+            }
+            int weight = Integer.parseInt(entry[1].trim());
+            for (int i = 0; i < weight; i++) {
+                table.add(operation);
+            }
+        }
+        if (table.isEmpty()) {
+            throw new IllegalArgumentException("Mix is empty");
+        }
+        return table.toArray(new Operation[0]);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        System.out.printf("Logging in %d users at %s:%d...%n", users, host, port);
+        for (int i = 0; i < users; i++) {
+            clients.add(connect(i));
+        }
+
+        System.out.printf("Running %.0f ops/s for %d s%n", rate, TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        Schedule schedule = new Schedule(start);
+        scheduler.scheduleAtFixedRate(schedule::tick, 0, 1, TimeUnit.MILLISECONDS);
+        try {
+            long remaining;
+            while ((remaining = durationNanos - (System.nanoTime() - start)) > 0) {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(Math.min(remaining, REPORT_INTERVAL_NANOS)) + 1);
+                reportProgress(start);
+            }
+        } finally {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        }
+
+        // Дожидаемся ответов на уже отправленные запросы
+        long drainDeadline = System.currentTimeMillis() + timeoutMillis * 2;
+        while (completed.get() < schedule.issued && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        report(schedule.issued, System.nanoTime() - start);
+
+        if (cleanup) {
+            for (SyntheticUser user : clients) {
+                CommandWrapper clear = new CommandWrapper();
+                clear.setCommandName("clear");
+                try {
+                    user.client.send(clear).get();
+                } catch (ExecutionException e) {
+                    System.err.println("Cleanup failed for " + user.login + ": " + e.getCause().getMessage());
+                }
+            }
+        }
+    }
+
+    private SyntheticUser connect(int index) throws IOException, InterruptedException {
+        String login = USER_PREFIX + index;
+        String passwordHash = ClientMain.hashPassword(USER_PASSWORD);
+        LabaClient client = new LabaClient(host, port, inFlightPerUser, timeoutMillis);
+        try {
+            // Пользователь может остаться с прошлого запуска — тогда регистрация просто откажет
+            client.register(login, passwordHash).get();
+            Response response = client.login(login, passwordHash).get();
+            if (!client.isLoggedIn()) {
+                throw new IOException("Cannot log in as " + login + ": " + response.getText());
+            }
+        } catch (ExecutionException e) {
+            client.close();
+            throw new IOException("Cannot log in as " + login + ": " + e.getCause().getMessage(), e.getCause());
+        } catch (IOException | InterruptedException e) {
+            client.close();
+            throw e;
+        }
+        return new SyntheticUser(index, login, client);
+    }
+
+    private void closeClients() {
+        for (SyntheticUser user : clients) {
+            try {
+                user.client.close();
+            } catch (IOException e) {
+                System.err.println("Error closing client: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Открытая модель нагрузки: запросы уходят по расписанию независимо от того,
+     * успел ли сервер ответить на предыдущие.
+     */
+    private final class Schedule {
+        private final long start;
+        private long issued; // пишет только поток расписания, читается после его остановки
+
+        private Schedule(long start) {
+            this.start = start;
+        }
+
+        private void tick() {
+            long now = System.nanoTime();
+            long due = (long) ((now - start) * rate / 1_000_000_000L);
+            while (issued < due) {
+                long intendedAt = start + (long) (issued * 1_000_000_000L / rate);
+                SyntheticUser user = clients.get((int) (issued % clients.size()));
+                issue(user, mix[ThreadLocalRandom.current().nextInt(mix.length)], intendedAt);
+                issued++;
+            }
+        }
+    }
+
+    private void issue(SyntheticUser user, Operation operation, long intendedAt) {
+        CommandWrapper wrapper = user.command(operation);
+        user.client.send(wrapper).whenComplete((response, error) -> {
+            histograms.get(operation).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedAt));
+            completed.incrementAndGet();
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                (cause instanceof SocketTimeoutException ? timeouts : failures).incrementAndGet();
+                return;
+            }
+            String text = response.getText();
+            if (text != null && text.startsWith("Error")) {
+                errorResponses.incrementAndGet();
+            }
+            user.onResponse(operation, wrapper, text);
+        });
+    }
+
+    private void reportProgress(long start) {
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("[%5.1f s] completed %d (%.0f ops/s), timeouts %d, failures %d%n",
+                elapsed, completed.get(), completed.get() / elapsed, timeouts.get(), failures.get());
+    }
+
+    private void report(long issued, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.printf("%-8s %10s %10s %10s %10s %10s%n", "op", "count", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Map.Entry<Operation, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.count() == 0) {
+                continue;
+            }
+            System.out.printf("%-8s %10d %10.2f %10.2f %10.2f %10.2f%n", entry.getKey().alias, histogram.count(),
+                    histogram.percentile(50) / 1000.0, histogram.percentile(99) / 1000.0,
+                    histogram.percentile(99.9) / 1000.0, histogram.max() / 1000.0);
+        }
+        System.out.println();
+        System.out.printf("Issued %d, completed %d in %.1f s: %.0f ops/s%n",
+                issued, completed.get(), seconds, completed.get() / seconds);
+        System.out.printf("Timeouts %d, transport failures %d, error responses %d, unanswered %d%n",
+                timeouts.get(), failures.get(), errorResponses.get(), issued - completed.get());
+    }
+
+    private static final class SyntheticUser {
+        private final String login;
+        private final LabaClient client;
+        private final long keyBase;
+        private final AtomicLong nextKey = new AtomicLong();
+        // Ключи, которые этот пользователь вставил и может менять или удалять
+        private final Deque<Long> ownKeys = new ConcurrentLinkedDeque<>();
+
+        private SyntheticUser(int index, String login, LabaClient client) {
+            this.login = login;
+            this.client = client;
+            this.keyBase = (index + 1) * KEY_RANGE;
+        }
+
+        private CommandWrapper command(Operation operation) {
+            CommandWrapper wrapper = new CommandWrapper();
+            switch (operation) {
+                case INSERT:
+                    long key = keyBase + nextKey.incrementAndGet() % KEY_RANGE;
+                    wrapper.setCommandName("insert");
+                    wrapper.setKey(key);
+                    wrapper.setArgument(key);
+                    wrapper.setMusicBand(randomBand());
+                    break;
+                case UPDATE:
+                    Long updated = ownKeys.peekLast();
+                    wrapper.setCommandName("update");
+                    wrapper.setKey(updated == null ? keyBase : updated);
+                    wrapper.setArgument(wrapper.getKey());
+                    wrapper.setMusicBand(randomBand());
+                    break;
+                case REMOVE:
+                    Long removed = ownKeys.pollFirst();
+                    wrapper.setCommandName("remove_key");
+                    wrapper.setKey(removed == null ? keyBase : removed);
+                    wrapper.setArgument(wrapper.getKey());
+                    break;
+                case FILTER:
+                    wrapper.setCommandName("filter_starts_with_name");
+                    wrapper.setArgument("load " + ThreadLocalRandom.current().nextInt(10));
+                    break;
+                case SHOW:
+                default:
+                    wrapper.setCommandName("show");
+                    break;
+            }
+            return wrapper;
+        }
+
+        private void onResponse(Operation operation, CommandWrapper wrapper, String text) {
+            if (operation == Operation.INSERT && text != null && text.startsWith("Music band inserted")) {
+                ownKeys.addLast(wrapper.getKey());
+            }
+        }
+
+        private static MusicBand randomBand() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return new MusicBand("load " + random.nextInt(1000),
+                    new Coordinates(random.nextDouble(1000), random.nextInt(1000)),
+                    1 + random.nextInt(10), "generated by LoadGenerator",
+                    MusicGenre.values()[random.nextInt(MusicGenre.values().length)],
+                    new Studio("load studio"));
+        }
+    }
+}
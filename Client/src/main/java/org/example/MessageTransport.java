@@ -0,0 +1,12 @@
+package org.example;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Способ доставить запрос серверу и получить ответ целиком:
+ * {@link ClientChannel} по UDP или {@link StreamChannel} по TCP.
+ */
+public interface MessageTransport extends Closeable {
+    CompletableFuture<byte[]> send(byte[] request);
+}
@@ -0,0 +1,182 @@
+package org.example;
+
+import network.StreamFraming;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TCP-канал для больших ответов. Запросы и ответы — сообщения {@link StreamFraming},
+ * ответы сопоставляются по id, так что по одному соединению может выполняться
+ * сколько угодно запросов. Доставку и скорость передачи обеспечивает TCP.
+ */
+public class StreamChannel implements MessageTransport {
+    private static final int CHECK_INTERVAL_MS = 250;
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    private final long responseTimeoutMs;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Thread receiver;
+    private final Map<Long, PendingRequest> pending = new ConcurrentHashMap<>();
+    private final AtomicLong requestIds = new AtomicLong(ThreadLocalRandom.current().nextLong());
+    private volatile long lastReceived = System.currentTimeMillis();
+    private volatile boolean open = true;
+
+    /**
+     * @param responseTimeoutMs сколько ждать, пока от сервера не придёт ни байта, до отказа
+     */
+    public StreamChannel(String host, int port, long responseTimeoutMs) throws IOException {
+        this.responseTimeoutMs = responseTimeoutMs;
+        this.socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), (int) responseTimeoutMs);
+            socket.setSoTimeout(CHECK_INTERVAL_MS);
+            this.in = socket.getInputStream();
+            this.out = socket.getOutputStream();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        this.receiver = new Thread(this::receiveLoop, "stream-receiver");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> send(byte[] request) {
+        long requestId = requestIds.incrementAndGet();
+        PendingRequest pendingRequest = new PendingRequest();
+        if (!open) {
+            pendingRequest.future.completeExceptionally(new ClosedChannelException());
+            return pendingRequest.future;
+        }
+        pending.put(requestId, pendingRequest);
+        ByteBuffer message = StreamFraming.encode(requestId, request);
+        try {
+            synchronized (out) {
+                out.write(message.array(), 0, message.limit());
+                out.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            pendingRequest.future.completeExceptionally(e);
+        }
+        return pendingRequest.future;
+    }
+
+    private void receiveLoop() {
+        ByteBuffer header = ByteBuffer.allocate(StreamFraming.HEADER_SIZE);
+        try {
+            while (open) {
+                if (!fill(header)) {
+                    continue;
+                }
+                header.flip();
+                int bodyLength = StreamFraming.bodyLength(header.getInt(), StreamFraming.MAX_RESPONSE_SIZE);
+                long requestId = header.getLong();
+                header.clear();
+
+                ByteBuffer body = ByteBuffer.allocate(bodyLength);
+                while (!fill(body)) {
+                    if (!open) {
+                        return;
+                    }
+                }
+                PendingRequest request = pending.remove(requestId);
+                if (request != null) {
+                    request.future.complete(body.array());
+                }
+            }
+        } catch (IOException e) {
+            if (open) {
+                failAll(e);
+                open = false;
+            }
+        }
+    }
+
+    /**
+     * Читает в буфер, пока он не заполнится или не истечёт интервал проверки таймаутов.
+     *
+     * @return true, если буфер заполнен
+     */
+    private boolean fill(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read;
+            try {
+                read = in.read(buffer.array(), buffer.position(), Math.min(buffer.remaining(), READ_CHUNK_SIZE));
+            } catch (SocketTimeoutException e) {
+                checkTimeouts();
+                return false;
+            }
+            if (read < 0) {
+                if (buffer.position() > 0) {
+                    throw new EOFException("Server closed the connection mid-message");
+                }
+                throw new ProtocolException("Server closed the connection");
+            }
+            buffer.position(buffer.position() + read);
+            lastReceived = System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    private void checkTimeouts() {
+        long now = System.currentTimeMillis();
+        Iterator<PendingRequest> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingRequest request = iterator.next();
+            if (now - Math.max(request.sentAt, lastReceived) >= responseTimeoutMs) {
+                iterator.remove();
+                request.future.completeExceptionally(new SocketTimeoutException("Stream response timed out"));
+            }
+        }
+    }
+
+    private void failAll(IOException e) {
+        Iterator<PendingRequest> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingRequest request = iterator.next();
+            iterator.remove();
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        socket.close();
+        try {
+            receiver.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failAll(new ClosedChannelException());
+    }
+
+    private static final class PendingRequest {
+        private final long sentAt = System.currentTimeMillis();
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+    }
+}
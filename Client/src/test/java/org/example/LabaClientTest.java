@@ -0,0 +1,61 @@
+package org.example;
+
+import data.CommandWrapper;
+import data.Coordinates;
+import data.MusicBand;
+import data.MusicGenre;
+import data.Studio;
+import junit.framework.TestCase;
+import network.Frame;
+import network.WireCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LabaClientTest extends TestCase {
+
+    private static CommandWrapper insert(long key) {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName("insert");
+        wrapper.setKey(key);
+        wrapper.setMusicBand(new MusicBand("Группа " + key, new Coordinates(1.5, 2), 4,
+                "Описание группы номер " + key, MusicGenre.POST_ROCK, new Studio("Студия " + key), 7));
+        return wrapper;
+    }
+
+    public void testLargeImportIsSplitIntoDatagrams() {
+        List<CommandWrapper> commands = new ArrayList<>();
+        for (long key = 1; key <= 1000; key++) {
+            commands.add(insert(key));
+        }
+        List<List<CommandWrapper>> parts = LabaClient.splitBatch(commands);
+        assertTrue(parts.size() > 1);
+
+        List<CommandWrapper> joined = new ArrayList<>();
+        for (List<CommandWrapper> part : parts) {
+            CommandWrapper batch = CommandWrapper.batch(part);
+            // Токен сессии подставляется при отправке
+            batch.setSessionToken("0123456789abcdef0123456789abcdef0123456789abcdef");
+            assertTrue(WireCodec.encodeRequest(batch).length <= Frame.MAX_PAYLOAD);
+            joined.addAll(part);
+        }
+        assertEquals(commands, joined);
+    }
+
+    public void testBatchIsSplitByCommandCount() {
+        CommandWrapper show = new CommandWrapper();
+        show.setCommandName("show");
+        List<List<CommandWrapper>> parts = LabaClient.splitBatch(
+                Collections.nCopies(2 * CommandWrapper.MAX_BATCH_SIZE + 1, show));
+        assertEquals(3, parts.size());
+        assertEquals(CommandWrapper.MAX_BATCH_SIZE, parts.get(0).size());
+        assertEquals(CommandWrapper.MAX_BATCH_SIZE, parts.get(1).size());
+        assertEquals(1, parts.get(2).size());
+    }
+
+    public void testSmallBatchIsSentAsIs() {
+        List<CommandWrapper> commands = List.of(insert(1), insert(2));
+        assertEquals(Collections.singletonList(commands), LabaClient.splitBatch(commands));
+    }
+}
@@ -1,9 +1,8 @@
 package commands;
 
-import data.MusicBand;
 import data.User;
 
-public class Clear implements Command, CommandWithUser {
+public class Clear implements Command {
     private final String commandName = "clear";
     private final Executor executor;
 
@@ -12,19 +11,12 @@ public class Clear implements Command, CommandWithUser {
     }
 
     @Override
-    public String execute() {
-        throw new UnsupportedOperationException("This command requires user authentication");
-    }
-
-    public String execute(User user) {
+    public String execute(CommandContext context) {
+        User user = context.getUser();
         if (user == null) return "Error: Authentication required";
         return executor.clear(user);
     }
 
-    public String executeWithMusicBand(MusicBand band, User user){
-        return null;
-    }
-
     @Override
     public String getCommandName() {
         return commandName;
@@ -34,4 +26,4 @@ public class Clear implements Command, CommandWithUser {
     public boolean requiresUser() {
         return true;
     }
-}
\ No newline at end of file
+}
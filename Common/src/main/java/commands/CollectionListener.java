@@ -0,0 +1,11 @@
+package commands;
+
+import data.ChangeEvent;
+
+/**
+ * Получает изменения коллекции. Вызывается под блокировкой записи коллекции,
+ * поэтому реализация не должна блокироваться.
+ */
+public interface CollectionListener {
+    void onChange(ChangeEvent event);
+}
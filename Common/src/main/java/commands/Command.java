@@ -1,9 +1,12 @@
 package commands;
 
 public interface Command {
-    String execute();
+    String execute(CommandContext context);
     String getCommandName();
     default boolean requiresUser() {
         return false; // по умолчанию команда не требует пользователя
     }
+    default boolean requiresMusicBand() {
+        return false; // элемент коллекции нужен только insert, update, replace_if_lower и remove_lower
+    }
 }
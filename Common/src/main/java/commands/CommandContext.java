@@ -0,0 +1,42 @@
+package commands;
+
+import data.MusicBand;
+import data.User;
+
+/**
+ * Всё, что нужно команде для одного выполнения. Команды в CommandMap общие для всех
+ * потоков и своего состояния не хранят, поэтому аргументы передаются только так.
+ */
+public final class CommandContext {
+    private final String argument;
+    private final MusicBand musicBand;
+    private final User user;
+    private final String login;
+    private final String passwordHash;
+
+    public CommandContext(String argument, MusicBand musicBand, User user) {
+        this(argument, musicBand, user, null, null);
+    }
+
+    private CommandContext(String argument, MusicBand musicBand, User user, String login, String passwordHash) {
+        this.argument = argument;
+        this.musicBand = musicBand;
+        this.user = user;
+        this.login = login;
+        this.passwordHash = passwordHash;
+    }
+
+    /**
+     * Контекст для register и login.
+     */
+    public static CommandContext credentials(String login, String passwordHash) {
+        return new CommandContext(null, null, null, login, passwordHash);
+    }
+
+    /** Аргумент из строки команды как есть; разбирает его сама команда. */
+    public String getArgument() { return argument; }
+    public MusicBand getMusicBand() { return musicBand; }
+    public User getUser() { return user; }
+    public String getLogin() { return login; }
+    public String getPasswordHash() { return passwordHash; }
+}
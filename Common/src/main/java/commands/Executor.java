@@ -1,6 +1,9 @@
 package commands;
 
+import data.ChangeEvent;
+import data.CollectionDelta;
 import data.MusicBand;
+import data.Response;
 import data.User;
 import utils.*;
 import commands.commandsWithArgument.*;
@@ -8,30 +11,44 @@ import commands.commandsWithArgument.*;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
 
 import static data.MusicBand.compareByDateAndName;
 
 public class Executor {
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int CHANGE_LOG_CAPACITY = 10_000;
+    private static final String CONCURRENT_MODIFICATION =
+            "Error: The band was changed by another request, try again";
+    private static final String UNIQUE_VIOLATION = "23505"; // SQLSTATE PostgreSQL
+
     private TreeMap<Long, MusicBand> musicBands;
     private final Map<String, Command> commands;
     private final ZonedDateTime initializationDate;
-    private Console consoleScript;
     private final Stack<FileInputStream> scriptStack = new Stack<>();
     private final Set<String> executingScripts = new HashSet<>();
 
     private final DatabaseManager dbManager;
     private final ReentrantReadWriteLock collectionLock = new ReentrantReadWriteLock();
+    // Ключи коллекции в порядке print_ascending (имя, затем ключ) — для постраничного вывода
+    private final NavigableSet<NameKey> nameIndex = new TreeSet<>();
+    private final List<CollectionListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long version; // меняется только под блокировкой записи
+    // Последние изменения (версия -> ключ) для sync; при переполнении клиент получает полный снимок
+    private final TreeMap<Long, Long> changeLog = new TreeMap<>();
+    // Меняется при каждом запуске сервера: версии разных запусков несравнимы
+    private final long epoch = ThreadLocalRandom.current().nextLong();
 
 
 
 
-    public Executor(DatabaseManager dbManager){
+    public Executor(DatabaseManager dbManager, SessionManager sessionManager){
         this.dbManager = dbManager;
         try {
             this.musicBands = dbManager.loadCollection();
@@ -42,8 +59,9 @@ public class Executor {
             System.err.println("Failed to load collection from DB: " + e.getMessage());
             this.musicBands = new TreeMap<>();
         }
+        musicBands.forEach((key, band) -> nameIndex.add(new NameKey(band.getName(), key)));
         initializationDate = ZonedDateTime.now();
-        commands = CommandMap.createMapWithCommands(this, dbManager);
+        commands = Collections.unmodifiableMap(CommandMap.createMapWithCommands(this, dbManager, sessionManager));
     }
 
     public Map<String, Command> getCommands(){
@@ -65,7 +83,9 @@ public class Executor {
                 "-remove_lower_key null : удалить из коллекции все элементы, ключ которых меньше, чем заданный\n" +
                 "-filter_starts_with_name name : вывести элементы, значение поля name которых начинается с заданной подстроки\n" +
                 "-print_ascending : вывести элементы коллекции в порядке возрастания\n" +
-                "-print_descending : вывести элементы коллекции в порядке убывания";
+                "-print_descending : вывести элементы коллекции в порядке убывания\n" +
+                "-watch : получать уведомления об изменениях коллекции\n" +
+                "-stats : статистика сервера (только для администраторов)";
     }
 
     public String info() {
@@ -73,22 +93,8 @@ public class Executor {
         try {
             if (musicBands == null) {
                 return "The collection is 'null'" ;
-            } else if (!musicBands.isEmpty()) {
-                return String.format("Type: TreeMap<Long, MusicBand>\n" +
-                                "Initialization date: %s\n" +
-                                "Size of collection: %d\n" +
-                                "First key: %d\n" +
-                                "Last key: %d",
-                        initializationDate.format(DateTimeFormatter.ofPattern("dd-MM-yyyy HH-mm-ss z")),
-                        musicBands.size(),
-                        musicBands.firstKey(),
-                        musicBands.lastKey());
-            } else {
-                return String.format("Type: TreeMap<Long, MusicBand>\n" +
-                                "Initialization date: %s\n" +
-                                "Size of collection: 0",
-                        initializationDate.format(DateTimeFormatter.ofPattern("dd-MM-yyyy HH-mm-ss z")));
             }
+            return CollectionFormatter.info(initializationDate, musicBands);
         }finally {
             collectionLock.readLock().unlock();
         }
@@ -99,43 +105,264 @@ public class Executor {
         try {
             if (musicBands == null) {
                 return "The collection is 'null'" ;
-            } else if (!musicBands.isEmpty()) {
-                String bandsString = musicBands.values().stream()
-                        .map(MusicBand::toString)
-                        .collect(Collectors.joining("\n"));
-
-                return "The collection contains " + musicBands.size() + " items:\n" + bandsString;
-            } else {
-                return "The collection is empty" ;
             }
+            return CollectionFormatter.show(musicBands.values());
         }finally {
             collectionLock.readLock().unlock();
         }
     }
 
+    /**
+     * Одна страница show: элементы с ключами после курсора, не больше pageSize.
+     * Блокировка держится только на время рендера страницы.
+     */
+    public Response showPage(int pageSize, String cursor) {
+        int limit = clampPageSize(pageSize);
+        collectionLock.readLock().lock();
+        try {
+            if (musicBands.isEmpty()) {
+                return new Response("The collection is empty");
+            }
+            Long after = cursor == null ? null : decodeKeyCursor(cursor);
+            NavigableMap<Long, MusicBand> rest = after == null ? musicBands : musicBands.tailMap(after, false);
+
+            StringBuilder page = new StringBuilder();
+            if (after == null) {
+                page.append("The collection contains ").append(musicBands.size()).append(" items:");
+            }
+            Long last = null;
+            for (Map.Entry<Long, MusicBand> entry : rest.entrySet()) {
+                if (limit-- == 0) {
+                    break;
+                }
+                appendLine(page, entry.getValue());
+                last = entry.getKey();
+            }
+            boolean more = last != null && musicBands.higherKey(last) != null;
+            return Response.page(page.toString(), more ? encodeKeyCursor(last) : null);
+        } catch (IllegalArgumentException e) {
+            return new Response("Error: Invalid page cursor");
+        } finally {
+            collectionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Одна страница print_ascending / print_descending по индексу имён.
+     */
+    public Response printPage(boolean descending, int pageSize, String cursor) {
+        int limit = clampPageSize(pageSize);
+        collectionLock.readLock().lock();
+        try {
+            if (musicBands.isEmpty()) {
+                return new Response("The collection is empty");
+            }
+            NavigableSet<NameKey> order = descending ? nameIndex.descendingSet() : nameIndex;
+            NameKey after = cursor == null ? null : decodeNameCursor(cursor);
+            NavigableSet<NameKey> rest = after == null ? order : order.tailSet(after, false);
+
+            StringBuilder page = new StringBuilder();
+            if (after == null) {
+                page.append("Collection elements in ").append(descending ? "descending" : "ascending")
+                        .append(" order (by 'name'):");
+            }
+            NameKey last = null;
+            for (NameKey nameKey : rest) {
+                if (limit-- == 0) {
+                    break;
+                }
+                appendLine(page, musicBands.get(nameKey.key));
+                last = nameKey;
+            }
+            boolean more = last != null && order.higher(last) != null;
+            return Response.page(page.toString(), more ? encodeNameCursor(last) : null);
+        } catch (IllegalArgumentException e) {
+            return new Response("Error: Invalid page cursor");
+        } finally {
+            collectionLock.readLock().unlock();
+        }
+    }
+
+    private static int clampPageSize(int pageSize) {
+        return Math.max(1, Math.min(MAX_PAGE_SIZE, pageSize));
+    }
+
+    private static void appendLine(StringBuilder page, MusicBand band) {
+        if (page.length() > 0) {
+            page.append('\n');
+        }
+        page.append(band);
+    }
+
+    // Курсоры непрозрачны для клиента: он только возвращает полученную строку
+    private static String encodeKeyCursor(Long key) {
+        return encodeCursor(key.toString());
+    }
+
+    private static Long decodeKeyCursor(String cursor) {
+        return Long.valueOf(decodeCursor(cursor));
+    }
+
+    private static String encodeNameCursor(NameKey nameKey) {
+        return encodeCursor(nameKey.key + ":" + nameKey.name);
+    }
+
+    private static NameKey decodeNameCursor(String cursor) {
+        String value = decodeCursor(cursor);
+        int separator = value.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new NameKey(value.substring(separator + 1), Long.valueOf(value.substring(0, separator)));
+    }
+
+    private static String encodeCursor(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Изменения коллекции после версии since: текущие значения изменённых ключей
+     * и список удалённых. Если версия из другого запуска сервера или уже вытеснена
+     * из журнала, возвращается полный снимок.
+     */
+    public CollectionDelta sync(long epoch, long since) {
+        collectionLock.readLock().lock();
+        try {
+            boolean full = epoch != this.epoch || since < 0 || since > version
+                    || (since < version && (changeLog.isEmpty() || changeLog.firstKey() > since + 1));
+            if (full) {
+                return new CollectionDelta(this.epoch, version, true, initializationDate,
+                        new TreeMap<>(musicBands), Collections.emptyList());
+            }
+            TreeMap<Long, MusicBand> changed = new TreeMap<>();
+            List<Long> removed = new ArrayList<>();
+            for (Long key : new LinkedHashSet<>(changeLog.tailMap(since, false).values())) {
+                MusicBand band = musicBands.get(key);
+                if (band != null) {
+                    changed.put(key, band);
+                } else {
+                    removed.add(key);
+                }
+            }
+            return new CollectionDelta(this.epoch, version, false, initializationDate, changed, removed);
+        } finally {
+            collectionLock.readLock().unlock();
+        }
+    }
+
+    public void addListener(CollectionListener listener) {
+        listeners.add(listener);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    private void putBand(Long key, MusicBand band) {
+        MusicBand previous = musicBands.put(key, band);
+        if (previous != null) {
+            nameIndex.remove(new NameKey(previous.getName(), key));
+        }
+        nameIndex.add(new NameKey(band.getName(), key));
+        publish(key, previous == null ? ChangeEvent.Operation.INSERT : ChangeEvent.Operation.UPDATE);
+    }
+
+    private void removeBand(Long key) {
+        MusicBand previous = musicBands.remove(key);
+        if (previous != null) {
+            nameIndex.remove(new NameKey(previous.getName(), key));
+            publish(key, ChangeEvent.Operation.REMOVE);
+        }
+    }
+
+    private void publish(Long key, ChangeEvent.Operation operation) {
+        ChangeEvent event = new ChangeEvent(key, operation, ++version);
+        changeLog.put(version, key);
+        if (changeLog.size() > CHANGE_LOG_CAPACITY) {
+            changeLog.pollFirstEntry();
+        }
+        for (CollectionListener listener : listeners) {
+            listener.onChange(event);
+        }
+    }
+
+    /*
+     * Запись в коллекцию идёт в три шага: проверка по снимку под блокировкой чтения,
+     * запрос к БД без блокировок и применение к памяти под короткой блокировкой записи.
+     * Между первым и вторым шагом группу может изменить другой запрос, поэтому БД меняет
+     * строку, только если её row_version совпадает с версией из снимка. Успешная запись
+     * в БД означает, что наша версия последняя, и её можно применять без повторных проверок.
+     */
+
+    /**
+     * Группа по ключу на момент вызова. Опубликованные группы не меняются (изменение
+     * заменяет объект целиком), поэтому снимок можно проверять и сравнивать без блокировки.
+     */
+    private MusicBand currentBand(Long key) {
+        collectionLock.readLock().lock();
+        try {
+            return musicBands.get(key);
+        } finally {
+            collectionLock.readLock().unlock();
+        }
+    }
+
+    private void applyPut(Long key, MusicBand band) {
+        collectionLock.writeLock().lock();
+        try {
+            putBand(key, band);
+        } finally {
+            collectionLock.writeLock().unlock();
+        }
+    }
+
+    private void applyRemoval(Collection<Long> keys) {
+        collectionLock.writeLock().lock();
+        try {
+            keys.forEach(this::removeBand);
+        } finally {
+            collectionLock.writeLock().unlock();
+        }
+    }
+
+    private static String skippedNote(int skipped) {
+        return skipped > 0 ? " (" + skipped + " changed by other requests and were kept)" : "";
+    }
+
     public String clear(User user) {
         if (user == null) return "Error: Authentication required";
 
-        collectionLock.writeLock().lock();
+        Map<Long, Long> ownVersions = new HashMap<>();
+        collectionLock.readLock().lock();
         try {
             if (musicBands == null) {
                 return "The collection is 'null'";
-            } else if (!musicBands.isEmpty()) {
-                int deletedCount = dbManager.clearUserMusicBands(user.getId());
-
-                if (deletedCount > 0) {
-                    musicBands.entrySet().removeIf(entry -> entry.getValue().getOwnerId() == user.getId());
-                    return "The collection was successfully cleared. " + deletedCount + " elements removed";
-                } else {
-                    return "No elements found for this user to clear.";
-                }
-            } else {
+            } else if (musicBands.isEmpty()) {
                 return "The collection is empty";
             }
+            musicBands.forEach((key, band) -> {
+                if (band.getOwnerId() == user.getId()) {
+                    ownVersions.put(key, band.getVersion());
+                }
+            });
+        } finally {
+            collectionLock.readLock().unlock();
+        }
+        if (ownVersions.isEmpty()) {
+            return "No elements found for this user to clear.";
+        }
+
+        try {
+            Set<Long> removed = dbManager.removeMusicBands(ownVersions, user.getId());
+            applyRemoval(removed);
+            return "The collection was successfully cleared. " + removed.size() + " elements removed"
+                    + skippedNote(ownVersions.size() - removed.size());
         } catch (SQLException e) {
             return "Database error during clear: " + e.getMessage();
-        } finally {
-            collectionLock.writeLock().unlock();
         }
     }
 
@@ -148,16 +375,8 @@ public class Executor {
         try {
             if (musicBands == null) {
                 return "The collection is 'null'";
-            } else if (musicBands.isEmpty()) {
-                return "The collection is empty";
-            } else {
-                String bandsString = musicBands.values().stream()
-                        .sorted()
-                        .map(MusicBand::toString)
-                        .collect(Collectors.joining("\n"));
-
-                return "Collection elements in ascending order (by 'name'):\n" + bandsString;
             }
+            return CollectionFormatter.printSorted(musicBands.values(), false);
         } finally {
             collectionLock.readLock().unlock();
         }
@@ -168,16 +387,8 @@ public class Executor {
         try {
             if (musicBands == null) {
                 return "The collection is 'null'";
-            } else if (musicBands.isEmpty()) {
-                return "The collection is empty";
-            } else {
-                String bandsString = musicBands.values().stream()
-                        .sorted(Comparator.reverseOrder())
-                        .map(MusicBand::toString)
-                        .collect(Collectors.joining("\n"));
-
-                return "Collection elements in descending order (by 'name'):\n" + bandsString;
             }
+            return CollectionFormatter.printSorted(musicBands.values(), true);
         } finally {
             collectionLock.readLock().unlock();
         }
@@ -186,245 +397,179 @@ public class Executor {
     public String remove_key(Long key, User user) {
         if (user == null) return "Error: Authentication required";
 
-        collectionLock.writeLock().lock();
-        try {
-            if (!musicBands.containsKey(key)) {
-                return "No music band found with key: " + key;
-            }
-
-            MusicBand band = musicBands.get(key);
-            if (band.getOwnerId() != user.getId()) {
-                return "Error: You don't have permission to remove this band";
-            }
+        MusicBand band = currentBand(key);
+        if (band == null) {
+            return "No music band found with key: " + key;
+        }
+        if (band.getOwnerId() != user.getId()) {
+            return "Error: You don't have permission to remove this band";
+        }
 
-            boolean success = dbManager.removeMusicBand(key, user.getId());
-            if (success) {
-                musicBands.remove(key);
-                return "Music band removed successfully.";
-            } else {
-                return "Failed to remove music band from database.";
+        try {
+            if (!dbManager.removeMusicBand(key, user.getId(), band.getVersion())) {
+                return CONCURRENT_MODIFICATION;
             }
         } catch (SQLException e) {
             return "Database error during removal: " + e.getMessage();
-        } finally {
-            collectionLock.writeLock().unlock();
         }
+        applyRemoval(Collections.singleton(key));
+        return "Music band removed successfully.";
     }
 
     public String remove_lower_key(Long key, User user) {
         if (user == null) return "Error: Authentication required";
 
-        collectionLock.writeLock().lock();
+        Map<Long, Long> ownVersions = new HashMap<>();
+        collectionLock.readLock().lock();
         try {
-            Set<Long> keysToRemove = musicBands.headMap(key, false).keySet();
-
-            if (keysToRemove.isEmpty()) {
-                return "No elements found with keys lower than: " + key;
-            }
-
-            int deletedCount = 0;
-            for (Long k : keysToRemove) {
-                MusicBand band = musicBands.get(k);
-                if (band != null && band.getOwnerId() == user.getId()) {
-                    boolean success = dbManager.removeMusicBand(k, user.getId());
-                    if (success) {
-                        deletedCount++;
-                    }
+            musicBands.headMap(key, false).forEach((k, band) -> {
+                if (band.getOwnerId() == user.getId()) {
+                    ownVersions.put(k, band.getVersion());
                 }
-            }
-
-            if (deletedCount > 0) {
-                Set<Long> successfullyRemoved = new HashSet<>();
-                for (Long k : keysToRemove) {
-                    MusicBand band = musicBands.get(k);
-                    if (band != null && band.getOwnerId() == user.getId()) {
-                        successfullyRemoved.add(k);
-                    }
-                }
-
-                successfullyRemoved.forEach(musicBands::remove);
+            });
+        } finally {
+            collectionLock.readLock().unlock();
+        }
+        if (ownVersions.isEmpty()) {
+            return "No elements found with keys lower than: " + key;
+        }
 
-                return "Successfully deleted " + deletedCount + " items";
-            } else {
+        try {
+            Set<Long> removed = dbManager.removeMusicBands(ownVersions, user.getId());
+            if (removed.isEmpty()) {
                 return "Failed to delete any items from database.";
             }
-
+            applyRemoval(removed);
+            return "Successfully deleted " + removed.size() + " items"
+                    + skippedNote(ownVersions.size() - removed.size());
         } catch (SQLException e) {
             return "Database error during remove_lower_key: " + e.getMessage();
-        } finally {
-            collectionLock.writeLock().unlock();
         }
     }
 
     public String filter_starts_with_name(String name) {
         collectionLock.readLock().lock();
         try {
-            List<MusicBand> bands = musicBands.values().stream()
-                    .filter(band -> band.getName().startsWith(name))
-                    .collect(Collectors.toList());
-
-            if (bands.isEmpty()) {
-                return "No music groups found whose names start with \"" + name + "\"";
-            }
-
-            String bandsString = bands.stream()
-                    .map(MusicBand::toString)
-                    .collect(Collectors.joining("\n"));
-
-            return "Found " + bands.size() +
-                    " music groups whose names start with \"" + name + "\"\n" +
-                    bandsString;
+            return CollectionFormatter.filterStartsWithName(musicBands.values(), name);
         } finally {
             collectionLock.readLock().unlock();
         }
     }
 
-public String insert(Long key, MusicBand band, User user) {
-    if (user == null) return "Error: Authentication required";
+    public String insert(Long key, MusicBand band, User user) {
+        if (user == null) return "Error: Authentication required";
 
-    collectionLock.writeLock().lock();
-    try {
-        if (musicBands.containsKey(key)) {
+        if (currentBand(key) != null) {
             return "The collection already contains the key: " + key;
         }
-
         band.setOwnerId(user.getId());
 
-        boolean success = dbManager.insertMusicBand(key, band, user.getId());
-        if (success) {
-            musicBands.put(key, band);
-            return "Music band inserted successfully with key: " + key +
-                    " and generated ID: " + band.getId();
-        } else {
-            return "Failed to insert music band into database.";
+        try {
+            // Ключ могли занять после проверки — тогда сработает UNIQUE на collection_key
+            if (!dbManager.insertMusicBand(key, band, user.getId())) {
+                return "Failed to insert music band into database.";
+            }
+        } catch (SQLException e) {
+            if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                return "The collection already contains the key: " + key;
+            }
+            return "Database error during insert: " + e.getMessage();
         }
-    } catch (SQLException e) {
-        return "Database error during insert: " + e.getMessage();
-    } finally {
-        collectionLock.writeLock().unlock();
+        applyPut(key, band);
+        return "Music band inserted successfully with key: " + key +
+                " and generated ID: " + band.getId();
     }
-}
 
     public String update(Long id, MusicBand band, User user) {
         if (user == null) return "Error: Authentication required";
 
-        collectionLock.writeLock().lock();
-        try {
-            if (!musicBands.containsKey(id)) {
-                return "The collection doesn't contain the key " + id;
-            }
-
-            MusicBand existingBand = musicBands.get(id);
-            if (existingBand.getOwnerId() != user.getId()) {
-                return "Error: You don't have permission to update this band";
-            }
+        MusicBand existingBand = currentBand(id);
+        if (existingBand == null) {
+            return "The collection doesn't contain the key " + id;
+        }
+        if (existingBand.getOwnerId() != user.getId()) {
+            return "Error: You don't have permission to update this band";
+        }
 
-            band.setOwnerId(user.getId());
+        band.setId(existingBand.getId());
+        band.setOwnerId(user.getId());
+        band.setVersion(existingBand.getVersion() + 1);
 
-            boolean success = dbManager.updateMusicBand(id, band, user.getId());
-            if (success) {
-                band.setId(existingBand.getId());
-                band.setOwnerId(user.getId());
-                musicBands.put(id, band);
-                return "Music band updated successfully.";
-            } else {
-                return "Failed to update music band in database.";
+        try {
+            if (!dbManager.updateMusicBand(id, band, user.getId(), existingBand.getVersion())) {
+                return CONCURRENT_MODIFICATION;
             }
         } catch (SQLException e) {
             return "Database error during update: " + e.getMessage();
-        } finally {
-            collectionLock.writeLock().unlock();
         }
+        applyPut(id, band);
+        return "Music band updated successfully.";
     }
 
     public String remove_lower(MusicBand band, User user) {
         if (user == null) return "Error: Authentication required";
 
-        collectionLock.writeLock().lock();
+        Map<Long, Long> ownVersions = new HashMap<>();
+        collectionLock.readLock().lock();
         try {
             if (musicBands.isEmpty()) {
                 return "The collection is empty";
             }
-
-            List<Long> keysToRemove = musicBands.entrySet().stream()
-                    .filter(entry -> {
-                        MusicBand currentBand = entry.getValue();
-                        return currentBand.getOwnerId() == user.getId() &&
-                                compareByDateAndName.compare(currentBand, band) > 0;
-                    })
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
-
-            if (keysToRemove.isEmpty()) {
-                return "No elements found to remove for this user";
-            }
-
-            int deletedCount = 0;
-            for (Long key : keysToRemove) {
-                boolean success = dbManager.removeMusicBand(key, user.getId());
-                if (success) {
-                    deletedCount++;
+            musicBands.forEach((key, currentBand) -> {
+                if (currentBand.getOwnerId() == user.getId() &&
+                        compareByDateAndName.compare(currentBand, band) > 0) {
+                    ownVersions.put(key, currentBand.getVersion());
                 }
-            }
+            });
+        } finally {
+            collectionLock.readLock().unlock();
+        }
+        if (ownVersions.isEmpty()) {
+            return "No elements found to remove for this user";
+        }
 
-            if (deletedCount > 0) {
-                for (Long key : keysToRemove) {
-                    MusicBand existingBand = musicBands.get(key);
-                    if (existingBand != null && existingBand.getOwnerId() == user.getId()) {
-                        musicBands.remove(key);
-                    }
-                }
-                return deletedCount + " bands were successfully removed";
-            } else {
+        try {
+            Set<Long> removed = dbManager.removeMusicBands(ownVersions, user.getId());
+            if (removed.isEmpty()) {
                 return "Failed to remove any bands from database.";
             }
-
+            applyRemoval(removed);
+            return removed.size() + " bands were successfully removed"
+                    + skippedNote(ownVersions.size() - removed.size());
         } catch (SQLException e) {
             return "Database error during remove_lower: " + e.getMessage();
-        } finally {
-            collectionLock.writeLock().unlock();
         }
     }
 
-public String replace_if_lower(Long key, MusicBand newBand, User user) {
-    if (user == null) return "Error: Authentication required";
-
-    collectionLock.writeLock().lock();
-    try {
-        if (musicBands.isEmpty()) {
-            return "The collection is empty";
-        }
+    public String replace_if_lower(Long key, MusicBand newBand, User user) {
+        if (user == null) return "Error: Authentication required";
 
-        if (!musicBands.containsKey(key)) {
+        MusicBand oldBand = currentBand(key);
+        if (oldBand == null) {
             return "The collection doesn't contain the key " + key;
         }
-
-        MusicBand oldBand = musicBands.get(key);
         if (oldBand.getOwnerId() != user.getId()) {
             return "Error: You don't have permission to replace this band";
         }
-
         if (compareByDateAndName.compare(oldBand, newBand) <= 0) {
             return "New value is not lower than existing value.";
         }
 
         newBand.setId(oldBand.getId());
         newBand.setOwnerId(user.getId());
+        newBand.setVersion(oldBand.getVersion() + 1);
 
-        boolean success = dbManager.updateMusicBand(key, newBand, user.getId());
-        if (success) {
-            musicBands.put(key, newBand);
-            return "Music band replaced successfully.";
-        } else {
-            return "Failed to replace music band in database.";
+        try {
+            // Версия гарантирует, что сравнивали именно с той группой, которую заменяем
+            if (!dbManager.updateMusicBand(key, newBand, user.getId(), oldBand.getVersion())) {
+                return CONCURRENT_MODIFICATION;
+            }
+        } catch (SQLException e) {
+            return "Database error during replace_if_lower: " + e.getMessage();
         }
-
-    } catch (SQLException e) {
-        return "Database error during replace_if_lower: " + e.getMessage();
-    } finally {
-        collectionLock.writeLock().unlock();
+        applyPut(key, newBand);
+        return "Music band replaced successfully.";
     }
-}
 
     public String execute_script(String filename, User user) {
         if (user == null) return "Error: Authentication required";
@@ -458,10 +603,9 @@ public String replace_if_lower(Long key, MusicBand newBand, User user) {
                 collectionLock.writeLock().unlock();
             }
 
-            Console previousConsole = consoleScript;
-
             try(FileInputStream scriptStream = new FileInputStream(scriptFile)) {
-                consoleScript = new Console(scriptStream);
+                // Своя консоль у каждого запуска: скрипты разных клиентов читаются параллельно
+                Console script = new Console(scriptStream);
 
                 StringBuilder result = new StringBuilder();
                 result.append("Executing script: ").append(filename).append("\n");
@@ -469,7 +613,7 @@ public String replace_if_lower(Long key, MusicBand newBand, User user) {
                 String line;
                 int lineNumber = 0;
 
-                while ((line = consoleScript.readLines()) != null) {
+                while ((line = script.readLines()) != null) {
                     lineNumber++;
                     if (line.trim().isEmpty()) continue;
 
@@ -490,7 +634,7 @@ public String replace_if_lower(Long key, MusicBand newBand, User user) {
                             }
                             result.append(execute_script(input.argument, user)).append("\n");
                         } else {
-                            result.append(processScriptCommand(input, lineNumber, user)).append("\n");
+                            result.append(processScriptCommand(input, lineNumber, user, script)).append("\n");
                         }
 
                     } catch (Exception e) {
@@ -500,8 +644,6 @@ public String replace_if_lower(Long key, MusicBand newBand, User user) {
                 }
 
                 return result.toString();
-            } finally{
-                consoleScript = previousConsole;
             }
 
         } catch (IOException e) {
@@ -518,7 +660,7 @@ public String replace_if_lower(Long key, MusicBand newBand, User user) {
         }
     }
 
-    private String processScriptCommand(Console.CommandInput input, int lineNumber, User user) {
+    private String processScriptCommand(Console.CommandInput input, int lineNumber, User user, Console script) {
         try {
             Command command = commands.get(input.command);
             if (command == null) {
@@ -530,19 +672,16 @@ public String replace_if_lower(Long key, MusicBand newBand, User user) {
             }
 
             if (command instanceof CommandWithArgument) {
-                CommandWithArgument<?> cmdWithArg = (CommandWithArgument<?>) command;
                 try {
-                    cmdWithArg.setArgument(input.argument);
+                    ((CommandWithArgument<?>) command).parseArgument(input.argument);
                 } catch (IllegalArgumentException e) {
                     return "Line " + lineNumber + ": Invalid argument for '" + input.command + "': " + e.getMessage();
                 }
             }
 
-            if (input.command.equals("insert") || input.command.equals("update") ||
-                    input.command.equals("remove_lower") || input.command.equals("replace_if_lower")) {
-
+            if (command.requiresMusicBand()) {
                 try {
-                    MusicBand band = consoleScript.readMusicBandFromScript();
+                    MusicBand band = script.readMusicBandFromScript();
                     if (band == null) {
                         return "Line " + lineNumber + ": Error reading MusicBand data";
                     }
@@ -554,9 +693,7 @@ public String replace_if_lower(Long key, MusicBand newBand, User user) {
                         return "Line " + lineNumber + ": Error: Band name cannot be empty";
                     }
 
-                    if (command instanceof CommandWithUser) {
-                        return ((CommandWithUser) command).executeWithMusicBand(band, user);
-                    }
+                    return command.execute(new CommandContext(input.argument, band, user));
 
                 } catch (IOException e) {
                     return "Line " + lineNumber + ": Error: Unexpected end of file while reading MusicBand";
@@ -565,11 +702,7 @@ public String replace_if_lower(Long key, MusicBand newBand, User user) {
                 }
             }
 
-            if (command instanceof CommandWithUser) {
-                return ((CommandWithUser) command).execute(user);
-            }
-
-            return command.execute();
+            return command.execute(new CommandContext(input.argument, null, user));
 
         } catch (Exception e) {
             return "Line " + lineNumber + ": Error executing command: " + e.getMessage();
@@ -579,4 +712,20 @@ public String replace_if_lower(Long key, MusicBand newBand, User user) {
     public int getSizeOfCollection(){
         return musicBands.size();
     }
+
+    private static final class NameKey implements Comparable<NameKey> {
+        private final String name;
+        private final Long key;
+
+        private NameKey(String name, Long key) {
+            this.name = name;
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(NameKey other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : key.compareTo(other.key);
+        }
+    }
 }
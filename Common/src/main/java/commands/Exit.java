@@ -9,7 +9,7 @@ public class Exit implements Command{
     }
 
     @Override
-    public String execute(){
+    public String execute(CommandContext context){
         return executor.exit();
     }
 
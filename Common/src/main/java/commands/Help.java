@@ -9,7 +9,7 @@ public class Help implements Command{
     }
 
     @Override
-    public String execute(){
+    public String execute(CommandContext context){
         return executor.help();
     }
 
@@ -9,7 +9,7 @@ public class Info implements Command {
     }
 
     @Override
-    public String execute() {
+    public String execute(CommandContext context){
         return executor.info();
     }
 
@@ -1,40 +1,44 @@
 package commands;
 
+import data.Response;
 import data.User;
 import utils.DatabaseManager;
+import utils.SessionManager;
 
 import java.sql.SQLException;
 
 public class LoginCommand implements Command {
     private final String commandName = "login";
     private final DatabaseManager dbManager;
-    private String login;
-    private String passwordHash;
+    private final SessionManager sessionManager;
 
-    public LoginCommand(DatabaseManager dbManager) {
+    public LoginCommand(DatabaseManager dbManager, SessionManager sessionManager) {
         this.dbManager = dbManager;
+        this.sessionManager = sessionManager;
     }
 
-    public void setCredentials(String login, String passwordHash) {
-        this.login = login;
-        this.passwordHash = passwordHash;
+    @Override
+    public String execute(CommandContext context) {
+        return login(context.getLogin(), context.getPasswordHash()).getText();
     }
 
-    @Override
-    public String execute() {
+    /**
+     * Проверяет пароль и открывает сессию; токен сессии возвращается в ответе.
+     */
+    public Response login(String login, String passwordHash) {
         if (login == null || passwordHash == null) {
-            return "Error: Login and password required";
+            return new Response("Error: Login and password required");
         }
 
         try {
             User user = dbManager.authenticateUser(login, passwordHash);
             if (user != null) {
-                return "Login successful. User ID: " + user.getId();
+                return Response.withSession("Login successful. User ID: " + user.getId(), sessionManager.open(user));
             } else {
-                return "Error: Invalid login or password.";
+                return new Response("Error: Invalid login or password.");
             }
         } catch (SQLException e) {
-            return "Database error during login: " + e.getMessage();
+            return new Response("Database error during login: " + e.getMessage());
         }
     }
 
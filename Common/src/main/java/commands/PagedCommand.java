@@ -0,0 +1,14 @@
+package commands;
+
+import data.Response;
+
+/**
+ * Команда вывода, умеющая отдавать коллекцию по страницам.
+ */
+public interface PagedCommand extends Command {
+    /**
+     * @param cursor курсор из предыдущей страницы или null для первой
+     * @return страница с курсором следующей (null — страница последняя)
+     */
+    Response executePage(int pageSize, String cursor);
+}
@@ -1,6 +1,8 @@
 package commands;
 
-public class Print_ascending implements Command{
+import data.Response;
+
+public class Print_ascending implements PagedCommand{
     private final String commandName = "print_ascending";
     private final Executor executor;
 
@@ -9,10 +11,15 @@ public class Print_ascending implements Command{
     }
 
     @Override
-    public String execute(){
+    public String execute(CommandContext context){
         return executor.print_ascending();
     }
 
+    @Override
+    public Response executePage(int pageSize, String cursor){
+        return executor.printPage(false, pageSize, cursor);
+    }
+
     @Override
     public String getCommandName(){return commandName;}
 
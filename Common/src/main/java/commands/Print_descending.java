@@ -1,6 +1,8 @@
 package commands;
 
-public class Print_descending implements Command{
+import data.Response;
+
+public class Print_descending implements PagedCommand{
     private final String commandName = "print_descending";
     private final Executor executor;
 
@@ -9,10 +11,15 @@ public class Print_descending implements Command{
     }
 
     @Override
-    public String execute(){
+    public String execute(CommandContext context){
         return executor.print_descending();
     }
 
+    @Override
+    public Response executePage(int pageSize, String cursor){
+        return executor.printPage(true, pageSize, cursor);
+    }
+
     @Override
     public String getCommandName(){return commandName;}
 
@@ -1,6 +1,5 @@
 package commands;
 
-import data.User;
 import utils.DatabaseManager;
 
 import java.sql.SQLException;
@@ -8,20 +7,15 @@ import java.sql.SQLException;
 public class RegisterCommand implements Command {
     private final String commandName = "register";
     private final DatabaseManager dbManager;
-    private String login;
-    private String passwordHash;
 
     public RegisterCommand(DatabaseManager dbManager) {
         this.dbManager = dbManager;
     }
 
-    public void setCredentials(String login, String passwordHash) {
-        this.login = login;
-        this.passwordHash = passwordHash;
-    }
-
     @Override
-    public String execute() {
+    public String execute(CommandContext context) {
+        String login = context.getLogin();
+        String passwordHash = context.getPasswordHash();
         if (login == null || passwordHash == null) {
             return "Error: Login and password required";
         }
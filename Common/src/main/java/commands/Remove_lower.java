@@ -1,9 +1,8 @@
 package commands;
 
-import data.MusicBand;
 import data.User;
 
-public class Remove_lower implements Command, CommandWithUser {
+public class Remove_lower implements Command {
     private final String commandName = "remove_lower";
     private final Executor executor;
 
@@ -12,20 +11,10 @@ public class Remove_lower implements Command, CommandWithUser {
     }
 
     @Override
-    public String execute() {
-        throw new UnsupportedOperationException("This command requires user authentication");
-    }
-
-    @Override
-    public String execute(User user) {
+    public String execute(CommandContext context) {
+        User user = context.getUser();
         if (user == null) return "Error: Authentication required";
-        return executor.remove_lower(null, user);
-    }
-
-    @Override
-    public String executeWithMusicBand(MusicBand musicBand, User user) {
-        if (user == null) return "Error: Authentication required";
-        return executor.remove_lower(musicBand, user);
+        return executor.remove_lower(context.getMusicBand(), user);
     }
 
     @Override
@@ -37,4 +26,9 @@ public class Remove_lower implements Command, CommandWithUser {
     public boolean requiresUser() {
         return true;
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean requiresMusicBand() {
+        return true;
+    }
+}
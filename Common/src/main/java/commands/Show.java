@@ -1,6 +1,8 @@
 package commands;
 
-public class Show implements Command{
+import data.Response;
+
+public class Show implements PagedCommand{
     private final String commandName = "show";
     private final Executor executor;
 
@@ -9,10 +11,15 @@ public class Show implements Command{
     }
 
     @Override
-    public String execute(){
+    public String execute(CommandContext context){
         return executor.show();
     }
 
+    @Override
+    public Response executePage(int pageSize, String cursor){
+        return executor.showPage(pageSize, cursor);
+    }
+
     @Override
     public String getCommandName(){return commandName;}
 
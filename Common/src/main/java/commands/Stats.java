@@ -0,0 +1,46 @@
+package commands;
+
+import data.User;
+import utils.Metrics;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Статистика сервера. Доступна только администраторам — логинам из
+ * -Dserver.admins=login1,login2; по умолчанию список пуст.
+ */
+public class Stats implements Command {
+    private static final Set<String> ADMINS = Arrays.stream(System.getProperty("server.admins", "").split(","))
+            .map(String::trim)
+            .filter(login -> !login.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+
+    private final String commandName = "stats";
+    private final Metrics metrics;
+
+    public Stats(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String execute(CommandContext context) {
+        User user = context.getUser();
+        if (user == null) return "Error: Authentication required";
+        if (!ADMINS.contains(user.getLogin())) {
+            return "Error: Command 'stats' is available to administrators only";
+        }
+        return metrics.report();
+    }
+
+    @Override
+    public String getCommandName() {
+        return commandName;
+    }
+
+    @Override
+    public boolean requiresUser() {
+        return true;
+    }
+}
@@ -3,6 +3,24 @@ package commands.commandsWithArgument;
 import commands.Command;
 
 public interface CommandWithArgument<T> extends Command {
-    void setArgument(String argument);
-    T getArgument();
+    /**
+     * Разбирает и проверяет аргумент, не меняя команду.
+     *
+     * @throws IllegalArgumentException если аргумент неверный
+     */
+    T parseArgument(String argument);
+
+    /**
+     * Положительный ключ коллекции — аргумент insert, update, remove_key и т.п.
+     */
+    static Long parseKey(String commandName, String argument) {
+        Long key;
+        try {
+            key = Long.parseLong(argument.trim());
+            if (key <= 0) throw new NumberFormatException();
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IllegalArgumentException("Command '" + commandName + "' failed: '" + argument + "' is not a valid Long number.");
+        }
+        return key;
+    }
 }
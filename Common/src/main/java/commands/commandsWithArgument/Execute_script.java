@@ -1,45 +1,34 @@
 package commands.commandsWithArgument;
 
-import commands.CommandWithUser;
+import commands.CommandContext;
 import commands.Executor;
-import data.MusicBand;
 import data.User;
 
-public class Execute_script implements CommandWithArgument<String>, CommandWithUser {
+public class Execute_script implements CommandWithArgument<String> {
     private final String commandName = "execute_script";
     private final Executor executor;
-    private String argument;
 
     public Execute_script(Executor executor) {
         this.executor = executor;
     }
 
     @Override
-    public String execute() {
-        throw new UnsupportedOperationException("This command requires user authentication");
-    }
-
-    public String execute(User user) {
+    public String execute(CommandContext context) {
+        User user = context.getUser();
         if (user == null) return "Error: Authentication required";
+        String argument = context.getArgument();
         if (argument == null || argument.trim().isEmpty()) {
             return "Error: Script filename is required";
         }
-        return executor.execute_script(argument, user);
-    }
-
-    public String executeWithMusicBand(MusicBand band, User user) {
-        if (user == null) {
-            return "Error: Authentication required";
-        }
-        return executor.execute_script(argument, user);
+        return executor.execute_script(parseArgument(argument), user);
     }
 
     @Override
-    public void setArgument(String argument) {
+    public String parseArgument(String argument) {
         if (argument == null || argument.trim().isEmpty()) {
             throw new IllegalArgumentException("Script filename cannot be empty");
         }
-        this.argument = argument.trim();
+        return argument.trim();
     }
 
     @Override
@@ -47,13 +36,8 @@ public class Execute_script implements CommandWithArgument<String>, CommandWithU
         return commandName;
     }
 
-    @Override
-    public String getArgument() {
-        return argument;
-    }
-
     @Override
     public boolean requiresUser() {
         return true;
     }
-}
\ No newline at end of file
+}
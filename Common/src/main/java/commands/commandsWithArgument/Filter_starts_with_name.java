@@ -1,27 +1,27 @@
 package commands.commandsWithArgument;
 
+import commands.CommandContext;
 import commands.Executor;
 
 public class Filter_starts_with_name implements CommandWithArgument<String> {
     private final String commandName = "filter_starts_with_name";
     private final Executor executor;
-    private String argument;
 
     public Filter_starts_with_name(Executor executor) {
         this.executor = executor;
     }
 
     @Override
-    public String execute() {
-        return executor.filter_starts_with_name(argument);
+    public String execute(CommandContext context) {
+        return executor.filter_starts_with_name(parseArgument(context.getArgument()));
     }
 
     @Override
-    public void setArgument(String argument) throws IllegalArgumentException {
+    public String parseArgument(String argument) throws IllegalArgumentException {
         if (argument == null || argument.trim().isEmpty()) {
             throw new IllegalArgumentException("Command '" + commandName + "' failed: Argument cannot be empty or null");
         }
-        this.argument = argument;
+        return argument;
     }
 
     @Override
@@ -29,13 +29,8 @@ public class Filter_starts_with_name implements CommandWithArgument<String> {
         return commandName;
     }
 
-    @Override
-    public String getArgument() {
-        return argument;
-    }
-
     @Override
     public boolean requiresUser() {
         return false; // Команда только для чтения, не требует аутентификации
     }
-}
\ No newline at end of file
+}
@@ -1,43 +1,27 @@
 package commands.commandsWithArgument;
 
-import commands.CommandWithUser;
+import commands.CommandContext;
 import commands.Executor;
-import data.MusicBand;
 import data.User;
 
-public class Remove_lower_key implements CommandWithArgument<Long>, CommandWithUser {
+public class Remove_lower_key implements CommandWithArgument<Long> {
     private final String commandName = "remove_lower_key";
-    private Executor executor;
-    private Long argument;
+    private final Executor executor;
 
     public Remove_lower_key(Executor executor) {
         this.executor = executor;
     }
 
     @Override
-    public String execute() {
-        throw new UnsupportedOperationException("This command requires user authentication");
-    }
-
-    public String execute(User user) {
+    public String execute(CommandContext context) {
+        User user = context.getUser();
         if (user == null) return "Error: Authentication required";
-        return executor.remove_lower_key(argument, user);
-    }
-
-    public String executeWithMusicBand(MusicBand band, User user){
-        return null;
+        return executor.remove_lower_key(parseArgument(context.getArgument()), user);
     }
 
     @Override
-    public void setArgument(String argument) {
-        Long arg;
-        try {
-            arg = Long.parseLong(argument.trim());
-            if (arg <= 0) throw new NumberFormatException();
-        } catch (NumberFormatException | NullPointerException e) {
-            throw new IllegalArgumentException("Command '" + commandName + "' failed: '" + argument + "' is not a valid Long number.");
-        }
-        this.argument = arg;
+    public Long parseArgument(String argument) {
+        return CommandWithArgument.parseKey(commandName, argument);
     }
 
     @Override
@@ -45,12 +29,7 @@ public class Remove_lower_key implements CommandWithArgument<Long>, CommandWithU
         return commandName;
     }
 
-    @Override
-    public Long getArgument() {
-        return argument;
-    }
-
     public boolean requiresUser() {
         return true;
     }
-}
\ No newline at end of file
+}
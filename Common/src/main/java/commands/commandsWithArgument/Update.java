@@ -1,53 +1,31 @@
 package commands.commandsWithArgument;
 
-import commands.CommandWithUser;
+import commands.CommandContext;
 import commands.Executor;
-import data.MusicBand;
 import data.User;
 
-public class Update implements CommandWithArgument<Long>, CommandWithUser {
-    private String commandName = "update";
-    private Long argument;
-    private Executor executor;
+public class Update implements CommandWithArgument<Long> {
+    private final String commandName = "update";
+    private final Executor executor;
 
     public Update(Executor executor){
         this.executor = executor;
     }
 
     @Override
-    public String execute(){
-        throw new UnsupportedOperationException("This command requires user authentication");
-    }
-    @Override
-    public String execute(User user) {
-        if (user == null) {
-            return "Error: Authentication required";
-        }
-        return executor.update(argument, null, user);
-    }
-
-    public String executeWithMusicBand(MusicBand band, User user) {
+    public String execute(CommandContext context) {
+        User user = context.getUser();
         if (user == null) {
             return "Error: Authentication required";
         }
-        return executor.update(argument, band, user);
+        return executor.update(parseArgument(context.getArgument()), context.getMusicBand(), user);
     }
 
     @Override
-    public void setArgument(String argument){
-        Long arg;
-        try{
-            arg = Long.parseLong(argument.trim());
-            if(arg <= 0) throw new NumberFormatException();
-        }catch(NumberFormatException | NullPointerException e){
-            throw new IllegalArgumentException("Command '" + commandName + "' failed: '" + argument + "' is not a valid Long number.");
-        }
-        this.argument = arg;
+    public Long parseArgument(String argument){
+        return CommandWithArgument.parseKey(commandName, argument);
     }
 
-    @Override
-    public Long getArgument(){return argument;}
-
     @Override
     public String getCommandName(){return commandName;}
 
@@ -55,4 +33,9 @@ public class Update implements CommandWithArgument<Long>, CommandWithUser {
     public boolean requiresUser() {
         return true; // требует аутентификации
     }
+
+    @Override
+    public boolean requiresMusicBand() {
+        return true;
+    }
 }
@@ -0,0 +1,31 @@
+package data;
+
+/**
+ * Изменение одного элемента коллекции. version — номер изменения коллекции,
+ * растёт на единицу с каждым событием, так что по пропуску номера клиент
+ * видит, что часть событий потерялась.
+ */
+public final class ChangeEvent {
+    public enum Operation { INSERT, UPDATE, REMOVE }
+
+    private final long key;
+    private final Operation operation;
+    private final long version;
+
+    public ChangeEvent(long key, Operation operation, long version) {
+        this.key = key;
+        this.operation = operation;
+        this.version = version;
+    }
+
+    public long getKey() { return key; }
+
+    public Operation getOperation() { return operation; }
+
+    public long getVersion() { return version; }
+
+    @Override
+    public String toString() {
+        return operation + " key=" + key + " (version " + version + ")";
+    }
+}
@@ -0,0 +1,40 @@
+package data;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.NavigableMap;
+
+/**
+ * Ответ на sync: изменения коллекции между версией клиента и текущей.
+ * При full = true в changed лежит вся коллекция, и клиент заменяет реплику целиком.
+ */
+public final class CollectionDelta {
+    private final long epoch;
+    private final long version;
+    private final boolean full;
+    private final ZonedDateTime initializationDate;
+    private final NavigableMap<Long, MusicBand> changed;
+    private final List<Long> removed;
+
+    public CollectionDelta(long epoch, long version, boolean full, ZonedDateTime initializationDate,
+                           NavigableMap<Long, MusicBand> changed, List<Long> removed) {
+        this.epoch = epoch;
+        this.version = version;
+        this.full = full;
+        this.initializationDate = initializationDate;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    public long getEpoch() { return epoch; }
+
+    public long getVersion() { return version; }
+
+    public boolean isFull() { return full; }
+
+    public ZonedDateTime getInitializationDate() { return initializationDate; }
+
+    public NavigableMap<Long, MusicBand> getChanged() { return changed; }
+
+    public List<Long> getRemoved() { return removed; }
+}
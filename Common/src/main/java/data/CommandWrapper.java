@@ -1,15 +1,29 @@
 package data;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CommandWrapper implements Serializable {
+    public static final String BATCH_COMMAND = "batch";
+    public static final String WATCH_COMMAND = "watch";
+    public static final String SYNC_COMMAND = "sync";
+    // Больше команд в одном пакете сервер не разбирает; длинные списки клиент делит на пакеты
+    public static final int MAX_BATCH_SIZE = 1000;
+
     private String commandName;
     private Long key;
     private MusicBand musicBand;
     private Object argument;
 
     private String login;
-    private String passwordHash; // Клиент должен прислать хэш пароля
+    private String passwordHash; // Нужен только для register и login
+    private String sessionToken; // Выдаётся при login, остальные команды присылают его
+
+    private List<CommandWrapper> batch; // Команды пакета, выполняются по порядку
+
+    private Integer pageSize; // Для show/print_*: вывод постранично
+    private String cursor;    // Курсор из предыдущей страницы, null — с начала
 
     public String getCommandName() { return commandName; }
     public void setCommandName(String commandName) { this.commandName = commandName; }
@@ -27,4 +41,22 @@ public class CommandWrapper implements Serializable {
     public void setLogin(String login) { this.login = login; }
     public String getPasswordHash() { return passwordHash; }
     public void setPasswordHash(String passwordHash) { this.passwordHash = passwordHash; }
+    public String getSessionToken() { return sessionToken; }
+    public void setSessionToken(String sessionToken) { this.sessionToken = sessionToken; }
+
+    public List<CommandWrapper> getBatch() { return batch; }
+    public void setBatch(List<CommandWrapper> batch) { this.batch = batch; }
+
+    public Integer getPageSize() { return pageSize; }
+    public void setPageSize(Integer pageSize) { this.pageSize = pageSize; }
+
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+
+    public static CommandWrapper batch(List<CommandWrapper> commands) {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName(BATCH_COMMAND);
+        wrapper.setBatch(new ArrayList<>(commands));
+        return wrapper;
+    }
 }
\ No newline at end of file
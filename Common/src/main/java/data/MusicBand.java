@@ -17,6 +17,8 @@ public final class MusicBand implements Comparable<MusicBand>, Serializable {
     private MusicGenre genre;
     private Studio studio;
     private int ownerId;
+    // row_version строки в БД — для оптимистичной проверки при записи, клиенту не передаётся
+    private long version;
 
     public MusicBand(String name, Coordinates coordinates, int numberOfParticipants,
                      String description, MusicGenre genre, Studio studio, int ownerId) {
@@ -83,6 +85,14 @@ public final class MusicBand implements Comparable<MusicBand>, Serializable {
         return ownerId;
     }
 
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
     public void setCreationDate(ZonedDateTime creationDate) {
         if (creationDate == null) {
             throw new IllegalArgumentException("Creation date value cannot be null");
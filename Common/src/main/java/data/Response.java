@@ -0,0 +1,66 @@
+package data;
+
+import java.util.Collections;
+import java.util.List;
+
+public final class Response {
+    private final String text;
+    private final List<String> results; // результаты команд пакета, по порядку
+    private final String sessionToken;  // выдаётся только в ответ на login
+    private final String nextCursor;    // у постраничного ответа: курсор следующей страницы
+    private final CollectionDelta delta; // у ответа на sync
+
+    public Response(String text) {
+        this(text, null, null, null, null);
+    }
+
+    private Response(String text, List<String> results, String sessionToken, String nextCursor,
+                     CollectionDelta delta) {
+        this.text = text;
+        this.results = results;
+        this.sessionToken = sessionToken;
+        this.nextCursor = nextCursor;
+        this.delta = delta;
+    }
+
+    public static Response batch(List<String> results) {
+        return new Response(null, Collections.unmodifiableList(results), null, null, null);
+    }
+
+    public static Response withSession(String text, String sessionToken) {
+        return new Response(text, null, sessionToken, null, null);
+    }
+
+    /**
+     * @param nextCursor null, если это последняя страница
+     */
+    public static Response page(String text, String nextCursor) {
+        return new Response(text, null, null, nextCursor, null);
+    }
+
+    public static Response sync(CollectionDelta delta) {
+        return new Response(null, null, null, null, delta);
+    }
+
+    public boolean isBatch() { return results != null; }
+
+    public boolean isSync() { return delta != null; }
+
+    public String getText() { return text; }
+
+    public List<String> getResults() { return results; }
+
+    public String getSessionToken() { return sessionToken; }
+
+    public String getNextCursor() { return nextCursor; }
+
+    public CollectionDelta getDelta() { return delta; }
+
+    @Override
+    public String toString() {
+        if (isSync()) {
+            return "Collection version " + delta.getVersion() + (delta.isFull() ? " (snapshot)" : "");
+        }
+        return isBatch() ? String.join("\n", results) : text;
+    }
+}
@@ -0,0 +1,96 @@
+package network;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Собирает ответ из DATA-кадров одного запроса. Кадры могут приходить
+ * в любом порядке и с повторами.
+ */
+public class ChunkAssembler {
+    private final long requestId;
+    private byte[][] chunks;
+    private int received;
+    private int totalLength;
+    private byte flags;
+
+    public ChunkAssembler(long requestId) {
+        this.requestId = requestId;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return true, если после добавления кадра ответ собран полностью
+     */
+    public boolean add(Frame frame) {
+        if (frame.getRequestId() != requestId || frame.getType() != Frame.Type.DATA) {
+            return isComplete();
+        }
+        if (chunks == null) {
+            chunks = new byte[frame.getCount()][];
+            flags = frame.getFlags();
+        } else if (chunks.length != frame.getCount()) {
+            return isComplete();
+        }
+        if (chunks[frame.getIndex()] == null) {
+            ByteBuffer payload = frame.getPayload();
+            byte[] data = new byte[payload.remaining()];
+            payload.get(data);
+            chunks[frame.getIndex()] = data;
+            totalLength += data.length;
+            received++;
+        }
+        return isComplete();
+    }
+
+    public boolean isComplete() {
+        return chunks != null && received == chunks.length;
+    }
+
+    public byte getFlags() {
+        return flags;
+    }
+
+    public boolean hasStarted() {
+        return chunks != null;
+    }
+
+    public int[] missing() {
+        if (chunks == null) {
+            return new int[0];
+        }
+        int[] missing = new int[chunks.length - received];
+        int n = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] == null) {
+                missing[n++] = i;
+            }
+        }
+        return Arrays.copyOf(missing, n);
+    }
+
+    /**
+     * Собранный ответ; сжатый сервером ответ распаковывается.
+     */
+    public byte[] assemble() throws ProtocolException {
+        byte[] data = concatenate();
+        return (flags & Frame.FLAG_DEFLATED) != 0 ? Compression.inflate(data) : data;
+    }
+
+    private byte[] concatenate() {
+        if (!isComplete()) {
+            throw new IllegalStateException("Response " + requestId + " is incomplete: " + received + "/" + chunks.length);
+        }
+        byte[] result = new byte[totalLength];
+        int position = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, result, position, chunk.length);
+            position += chunk.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+package network;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие больших ответов (show, print_*, filter_starts_with_name).
+ * Текст MusicBand.toString() очень однообразен, поэтому даже самый быстрый
+ * уровень Deflate уменьшает его в несколько раз.
+ */
+public final class Compression {
+    public static final int THRESHOLD = 1024;
+    private static final int MAX_INFLATED_SIZE = 512 * 1024 * 1024;
+
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    private Compression() {
+    }
+
+    public static boolean shouldCompress(int length) {
+        return length >= THRESHOLD;
+    }
+
+    public static byte[] deflate(byte[] data) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        byte[] chunk = new byte[16384];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    public static byte[] inflate(byte[] data) throws ProtocolException {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        byte[] chunk = new byte[16384];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ProtocolException("Truncated compressed response");
+                }
+                out.write(chunk, 0, n);
+                if (out.size() > MAX_INFLATED_SIZE) {
+                    throw new ProtocolException("Compressed response is too large");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Corrupted compressed response: " + e.getMessage());
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,175 @@
+package network;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Кадр UDP-протокола. Каждая датаграмма (запрос, фрагмент ответа, NACK, ACK, BUSY, EVENT)
+ * начинается с заголовка фиксированной длины:
+ * magic(2) version(1) type(1) flags(1) requestId(8) index(4) count(4).
+ */
+public final class Frame {
+    public static final short MAGIC = 0x4C37;
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 21;
+    public static final int MAX_PAYLOAD = 60000;
+    // Больше фрагментов не бывает: ответ ограничен теми же 512 МБ, что и в
+    // Compression и StreamFraming. count из заголовка задаёт размер массива у получателя
+    public static final int MAX_COUNT = (StreamFraming.MAX_RESPONSE_SIZE + MAX_PAYLOAD - 1) / MAX_PAYLOAD;
+
+    // REQUEST: клиент умеет распаковывать ответы
+    public static final byte FLAG_ACCEPTS_DEFLATE = 0x01;
+    // DATA: собранный ответ сжат Deflate
+    public static final byte FLAG_DEFLATED = 0x02;
+
+    public enum Type {
+        REQUEST, DATA, NACK, ACK,
+        // Сервер перегружен и не принял запрос; в теле — через сколько мс повторить
+        BUSY,
+        // Изменения коллекции для подписчиков watch; не подтверждаются
+        EVENT;
+
+        private static final Type[] VALUES = values();
+    }
+
+    private final Type type;
+    private final byte flags;
+    private final long requestId;
+    private final int index;
+    private final int count;
+    private final ByteBuffer payload;
+
+    private Frame(Type type, byte flags, long requestId, int index, int count, ByteBuffer payload) {
+        this.type = type;
+        this.flags = flags;
+        this.requestId = requestId;
+        this.index = index;
+        this.count = count;
+        this.payload = payload;
+    }
+
+    public Type getType() { return type; }
+    public byte getFlags() { return flags; }
+    public long getRequestId() { return requestId; }
+    public int getIndex() { return index; }
+    public int getCount() { return count; }
+
+    public boolean hasFlag(byte flag) { return (flags & flag) != 0; }
+
+    public ByteBuffer getPayload() { return payload.duplicate(); }
+
+    /**
+     * Тот же кадр с телом в собственном массиве точного размера: буфер,
+     * из которого кадр разобран, можно сразу переиспользовать.
+     */
+    public Frame copy() {
+        ByteBuffer data = ByteBuffer.allocate(payload.remaining());
+        data.put(payload.duplicate()).flip();
+        return new Frame(type, flags, requestId, index, count, data);
+    }
+
+    public static ByteBuffer encode(Type type, byte flags, long requestId, int index, int count,
+                                    byte[] payload, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length);
+        write(buffer, type, flags, requestId, index, count, payload, offset, length);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Записывает кадр в переданный буфер с текущей позиции — для буферов из пула.
+     */
+    public static void write(ByteBuffer buffer, Type type, byte flags, long requestId, int index, int count,
+                             byte[] payload, int offset, int length) {
+        writeHeader(buffer, type, flags, requestId, index, count);
+        buffer.put(payload, offset, length);
+    }
+
+    /**
+     * Записывает только заголовок с текущей позиции — когда тело уже лежит в буфере
+     * после {@link #HEADER_SIZE} байт, а число фрагментов стало известно в конце.
+     */
+    public static void writeHeader(ByteBuffer buffer, Type type, byte flags, long requestId, int index, int count) {
+        buffer.putShort(MAGIC)
+                .put(VERSION)
+                .put((byte) type.ordinal())
+                .put(flags)
+                .putLong(requestId)
+                .putInt(index)
+                .putInt(count);
+    }
+
+    public static ByteBuffer encode(Type type, long requestId, byte[] payload) {
+        return encode(type, (byte) 0, requestId, payload);
+    }
+
+    public static ByteBuffer encode(Type type, byte flags, long requestId, byte[] payload) {
+        return encode(type, flags, requestId, 0, 1, payload, 0, payload.length);
+    }
+
+    public static ByteBuffer encodeNack(long requestId, int[] missing) {
+        ByteBuffer indices = ByteBuffer.allocate(4 + 4 * missing.length);
+        indices.putInt(missing.length);
+        for (int index : missing) {
+            indices.putInt(index);
+        }
+        return encode(Type.NACK, requestId, indices.array());
+    }
+
+    public static ByteBuffer encodeAck(long requestId) {
+        return encode(Type.ACK, requestId, new byte[0]);
+    }
+
+    public static ByteBuffer encodeBusy(long requestId, int retryAfterMillis) {
+        return encode(Type.BUSY, requestId, ByteBuffer.allocate(4).putInt(retryAfterMillis).array());
+    }
+
+    public static Frame decode(ByteBuffer buffer) throws ProtocolException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new ProtocolException("Datagram is too short: " + buffer.remaining() + " bytes");
+        }
+        if (buffer.getShort() != MAGIC) {
+            throw new ProtocolException("Unknown datagram format");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new ProtocolException("Unsupported protocol version: " + version);
+        }
+        int typeCode = buffer.get();
+        if (typeCode < 0 || typeCode >= Type.VALUES.length) {
+            throw new ProtocolException("Unknown frame type: " + typeCode);
+        }
+        byte flags = buffer.get();
+        long requestId = buffer.getLong();
+        int index = buffer.getInt();
+        int count = buffer.getInt();
+        if (count <= 0 || count > MAX_COUNT || index < 0 || index >= count) {
+            throw new ProtocolException("Invalid chunk " + index + "/" + count);
+        }
+        return new Frame(Type.VALUES[typeCode], flags, requestId, index, count, buffer.slice());
+    }
+
+    public int[] getNackIndices() throws ProtocolException {
+        ByteBuffer data = getPayload();
+        if (data.remaining() < 4) {
+            throw new ProtocolException("Malformed NACK");
+        }
+        int length = data.getInt();
+        if (length < 0 || (long) length * 4 > data.remaining()) {
+            throw new ProtocolException("Malformed NACK");
+        }
+        int[] indices = new int[length];
+        for (int i = 0; i < length; i++) {
+            indices[i] = data.getInt();
+        }
+        return indices;
+    }
+
+    public int getRetryAfterMillis() throws ProtocolException {
+        ByteBuffer data = getPayload();
+        if (data.remaining() < 4) {
+            throw new ProtocolException("Malformed BUSY");
+        }
+        return Math.max(0, data.getInt());
+    }
+}
@@ -0,0 +1,38 @@
+package network;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Кадрирование сообщений в TCP-потоке: [длина int][id запроса long][тело].
+ * Длина считает id и тело. Тело — то же, что в UDP: запрос или ответ WireCodec,
+ * только без разбиения на фрагменты и без сжатия.
+ */
+public final class StreamFraming {
+    public static final int HEADER_SIZE = 12;
+    public static final int MAX_REQUEST_SIZE = 1024 * 1024;
+    public static final int MAX_RESPONSE_SIZE = 512 * 1024 * 1024;
+
+    private StreamFraming() {
+    }
+
+    public static ByteBuffer encode(long requestId, byte[] body) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        buffer.putInt(Long.BYTES + body.length);
+        buffer.putLong(requestId);
+        buffer.put(body);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return размер тела сообщения по полю длины
+     */
+    public static int bodyLength(int length, int maxBodySize) throws ProtocolException {
+        int body = length - Long.BYTES;
+        if (body < 0 || body > maxBodySize) {
+            throw new ProtocolException("Invalid stream message length: " + length);
+        }
+        return body;
+    }
+}
@@ -0,0 +1,354 @@
+package network;
+
+import data.*;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Бинарный формат запросов и ответов вместо Java-сериализации.
+ * Каждое сообщение начинается с байта версии кодека; сервер принимает
+ * только известные ему структуры, произвольные объекты не десериализуются.
+ */
+public final class WireCodec {
+    public static final int VERSION = 5;
+
+    private static final int ARGUMENT_NULL = 0;
+    private static final int ARGUMENT_STRING = 1;
+    private static final int ARGUMENT_LONG = 2;
+
+    private static final int RESPONSE_TEXT = 0;
+    private static final int RESPONSE_BATCH = 1;
+    private static final int RESPONSE_SYNC = 2;
+
+    private static final MusicGenre[] GENRES = MusicGenre.values();
+    private static final ChangeEvent.Operation[] OPERATIONS = ChangeEvent.Operation.values();
+
+    private WireCodec() {
+    }
+
+    public static byte[] encodeRequest(CommandWrapper wrapper) {
+        WireWriter writer = new WireWriter();
+        writer.writeByte(VERSION);
+        writeCommandWrapper(writer, wrapper);
+        return writer.toByteArray();
+    }
+
+    public static CommandWrapper decodeRequest(ByteBuffer data) throws ProtocolException {
+        WireReader reader = new WireReader(data);
+        checkVersion(reader);
+        return readCommandWrapper(reader, true);
+    }
+
+    public static byte[] encodeResponse(Response response) {
+        WireWriter writer;
+        if (response.isSync()) {
+            writer = new WireWriter(64 + response.getDelta().getChanged().size() * 128);
+        } else if (response.isBatch()) {
+            writer = new WireWriter();
+        } else {
+            String text = response.getText();
+            writer = new WireWriter(text == null ? 16 : text.length() + 16);
+        }
+        encodeResponse(response, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Кодирует ответ в переданный writer — например, в переиспользуемый writer с приёмником.
+     */
+    public static void encodeResponse(Response response, WireWriter writer) {
+        writer.writeByte(VERSION);
+        if (response.isSync()) {
+            writer.writeByte(RESPONSE_SYNC);
+            writeDelta(writer, response.getDelta());
+            return;
+        }
+        if (response.isBatch()) {
+            writer.writeByte(RESPONSE_BATCH);
+            writer.writeVarInt(response.getResults().size());
+            for (String result : response.getResults()) {
+                writer.writeString(result);
+            }
+            return;
+        }
+
+        writer.writeByte(RESPONSE_TEXT);
+        writer.writeString(response.getText());
+        writer.writeString(response.getSessionToken());
+        writer.writeString(response.getNextCursor());
+    }
+
+    public static Response decodeResponse(ByteBuffer data) throws ProtocolException {
+        WireReader reader = new WireReader(data);
+        checkVersion(reader);
+        int type = reader.readByte();
+        switch (type) {
+            case RESPONSE_TEXT:
+                String text = reader.readString();
+                String sessionToken = reader.readString();
+                String nextCursor = reader.readString();
+                if (sessionToken != null) {
+                    return Response.withSession(text, sessionToken);
+                }
+                return nextCursor == null ? new Response(text) : Response.page(text, nextCursor);
+            case RESPONSE_BATCH:
+                int count = reader.readLength();
+                List<String> results = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    results.add(reader.readString());
+                }
+                return Response.batch(results);
+            case RESPONSE_SYNC:
+                return Response.sync(readDelta(reader));
+            default:
+                throw new ProtocolException("Unknown response type: " + type);
+        }
+    }
+
+    private static void writeDelta(WireWriter writer, CollectionDelta delta) {
+        writer.writeSignedLong(delta.getEpoch());
+        writer.writeVarLong(delta.getVersion());
+        writer.writeBoolean(delta.isFull());
+        writeDate(writer, delta.getInitializationDate());
+        writer.writeVarInt(delta.getChanged().size());
+        for (Map.Entry<Long, MusicBand> entry : delta.getChanged().entrySet()) {
+            writer.writeSignedLong(entry.getKey());
+            writeMusicBand(writer, entry.getValue());
+        }
+        writer.writeVarInt(delta.getRemoved().size());
+        for (Long key : delta.getRemoved()) {
+            writer.writeSignedLong(key);
+        }
+    }
+
+    private static CollectionDelta readDelta(WireReader reader) throws ProtocolException {
+        long epoch = reader.readSignedLong();
+        long version = reader.readVarLong();
+        boolean full = reader.readBoolean();
+        ZonedDateTime initializationDate = readDate(reader);
+        int changedCount = reader.readLength();
+        TreeMap<Long, MusicBand> changed = new TreeMap<>();
+        for (int i = 0; i < changedCount; i++) {
+            long key = reader.readSignedLong();
+            changed.put(key, readMusicBand(reader));
+        }
+        int removedCount = reader.readLength();
+        List<Long> removed = new ArrayList<>(removedCount);
+        for (int i = 0; i < removedCount; i++) {
+            removed.add(reader.readSignedLong());
+        }
+        return new CollectionDelta(epoch, version, full, initializationDate, changed, removed);
+    }
+
+    public static byte[] encodeEvents(List<ChangeEvent> events) {
+        WireWriter writer = new WireWriter(8 + events.size() * 12);
+        writer.writeByte(VERSION);
+        writer.writeVarInt(events.size());
+        for (ChangeEvent event : events) {
+            writer.writeSignedLong(event.getKey());
+            writer.writeByte(event.getOperation().ordinal());
+            writer.writeVarLong(event.getVersion());
+        }
+        return writer.toByteArray();
+    }
+
+    public static List<ChangeEvent> decodeEvents(ByteBuffer data) throws ProtocolException {
+        WireReader reader = new WireReader(data);
+        checkVersion(reader);
+        int count = reader.readLength();
+        List<ChangeEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long key = reader.readSignedLong();
+            int operation = reader.readByte();
+            if (operation < 0 || operation >= OPERATIONS.length) {
+                throw new ProtocolException("Unknown change operation: " + operation);
+            }
+            events.add(new ChangeEvent(key, OPERATIONS[operation], reader.readVarLong()));
+        }
+        return events;
+    }
+
+    private static void checkVersion(WireReader reader) throws ProtocolException {
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new ProtocolException("Unsupported codec version: " + version);
+        }
+    }
+
+    public static void writeCommandWrapper(WireWriter writer, CommandWrapper wrapper) {
+        writer.writeString(wrapper.getCommandName());
+        writeNullableLong(writer, wrapper.getKey());
+        writer.writeBoolean(wrapper.getMusicBand() != null);
+        if (wrapper.getMusicBand() != null) {
+            writeMusicBand(writer, wrapper.getMusicBand());
+        }
+        writeArgument(writer, wrapper.getArgument());
+        writer.writeString(wrapper.getLogin());
+        writer.writeString(wrapper.getPasswordHash());
+        writer.writeString(wrapper.getSessionToken());
+        writer.writeVarInt(wrapper.getPageSize() == null ? 0 : wrapper.getPageSize());
+        writer.writeString(wrapper.getCursor());
+
+        List<CommandWrapper> batch = wrapper.getBatch();
+        writer.writeVarInt(batch == null ? 0 : batch.size());
+        if (batch != null) {
+            for (CommandWrapper entry : batch) {
+                writeCommandWrapper(writer, entry);
+            }
+        }
+    }
+
+    /**
+     * @param allowBatch вложенные пакеты запрещены, чтобы глубина разбора была ограничена
+     */
+    public static CommandWrapper readCommandWrapper(WireReader reader, boolean allowBatch) throws ProtocolException {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName(reader.readString());
+        wrapper.setKey(readNullableLong(reader));
+        if (reader.readBoolean()) {
+            wrapper.setMusicBand(readMusicBand(reader));
+        }
+        wrapper.setArgument(readArgument(reader));
+        wrapper.setLogin(reader.readString());
+        wrapper.setPasswordHash(reader.readString());
+        wrapper.setSessionToken(reader.readString());
+        int pageSize = reader.readVarInt();
+        if (pageSize > 0) {
+            wrapper.setPageSize(pageSize);
+        }
+        wrapper.setCursor(reader.readString());
+
+        int batchSize = reader.readLength();
+        if (batchSize > 0) {
+            if (!allowBatch) {
+                throw new ProtocolException("Nested batches are not supported");
+            }
+            if (batchSize > CommandWrapper.MAX_BATCH_SIZE) {
+                throw new ProtocolException("Batch has too many commands: " + batchSize
+                        + " (max " + CommandWrapper.MAX_BATCH_SIZE + ")");
+            }
+            List<CommandWrapper> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                batch.add(readCommandWrapper(reader, false));
+            }
+            wrapper.setBatch(batch);
+        }
+        return wrapper;
+    }
+
+    private static void writeArgument(WireWriter writer, Object argument) {
+        if (argument == null) {
+            writer.writeByte(ARGUMENT_NULL);
+        } else if (argument instanceof String) {
+            writer.writeByte(ARGUMENT_STRING);
+            writer.writeString((String) argument);
+        } else if (argument instanceof Long || argument instanceof Integer) {
+            writer.writeByte(ARGUMENT_LONG);
+            writer.writeSignedLong(((Number) argument).longValue());
+        } else {
+            throw new IllegalArgumentException("Unsupported argument type: " + argument.getClass().getName());
+        }
+    }
+
+    private static Object readArgument(WireReader reader) throws ProtocolException {
+        int type = reader.readByte();
+        switch (type) {
+            case ARGUMENT_NULL:
+                return null;
+            case ARGUMENT_STRING:
+                return reader.readString();
+            case ARGUMENT_LONG:
+                return reader.readSignedLong();
+            default:
+                throw new ProtocolException("Unknown argument type: " + type);
+        }
+    }
+
+    public static void writeMusicBand(WireWriter writer, MusicBand band) {
+        writeNullableLong(writer, band.getId());
+        writer.writeString(band.getName());
+        writeCoordinates(writer, band.getCoordinates());
+        writeDate(writer, band.getCreationDate());
+        writer.writeSignedInt(band.getNumberOfParticipants());
+        writer.writeString(band.getDescription());
+        writer.writeByte(band.getGenre() == null ? -1 : band.getGenre().ordinal());
+        writer.writeString(band.getStudio() == null ? null : band.getStudio().getName());
+        writer.writeSignedInt(band.getOwnerId());
+    }
+
+    public static MusicBand readMusicBand(WireReader reader) throws ProtocolException {
+        try {
+            MusicBand band = new MusicBand();
+            band.setId(readNullableLong(reader));
+            band.setName(reader.readString());
+            band.setCoordinates(readCoordinates(reader));
+            band.setCreationDate(readDate(reader));
+            band.setNumberOfParticipants(reader.readSignedInt());
+            band.setDescription(reader.readString());
+            band.setGenre(readGenre(reader));
+            String studioName = reader.readString();
+            if (studioName != null) {
+                band.setStudio(new Studio(studioName));
+            }
+            band.setOwnerId(reader.readSignedInt());
+            return band;
+        } catch (IllegalArgumentException e) {
+            throw new ProtocolException("Invalid music band: " + e.getMessage());
+        }
+    }
+
+    private static void writeCoordinates(WireWriter writer, Coordinates coordinates) {
+        writer.writeDouble(coordinates.getX());
+        writer.writeSignedInt(coordinates.getY());
+    }
+
+    private static Coordinates readCoordinates(WireReader reader) throws ProtocolException {
+        return new Coordinates(reader.readDouble(), reader.readSignedInt());
+    }
+
+    private static MusicGenre readGenre(WireReader reader) throws ProtocolException {
+        int ordinal = reader.readByte();
+        if (ordinal < 0 || ordinal >= GENRES.length) {
+            throw new ProtocolException("Unknown music genre: " + ordinal);
+        }
+        return GENRES[ordinal];
+    }
+
+    private static void writeDate(WireWriter writer, ZonedDateTime date) {
+        Instant instant = date.toInstant();
+        writer.writeSignedLong(instant.getEpochSecond());
+        writer.writeVarInt(instant.getNano());
+        writer.writeString(date.getZone().getId());
+    }
+
+    private static ZonedDateTime readDate(WireReader reader) throws ProtocolException {
+        long seconds = reader.readSignedLong();
+        int nanos = reader.readVarInt();
+        String zone = reader.readString();
+        try {
+            return Instant.ofEpochSecond(seconds, nanos).atZone(ZoneId.of(zone));
+        } catch (DateTimeException | ArithmeticException | NullPointerException e) {
+            throw new ProtocolException("Invalid creation date: " + e.getMessage());
+        }
+    }
+
+    private static void writeNullableLong(WireWriter writer, Long value) {
+        writer.writeBoolean(value != null);
+        if (value != null) {
+            writer.writeSignedLong(value);
+        }
+    }
+
+    private static Long readNullableLong(WireReader reader) throws ProtocolException {
+        return reader.readBoolean() ? reader.readSignedLong() : null;
+    }
+}
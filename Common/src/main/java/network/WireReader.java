@@ -0,0 +1,108 @@
+package network;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Чтение данных, записанных {@link WireWriter}. Любое нарушение формата
+ * (обрыв данных, слишком длинные varint и строки) даёт {@link ProtocolException}.
+ */
+public final class WireReader {
+    private final ByteBuffer buffer;
+
+    public WireReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public WireReader(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    private void require(int bytes) throws ProtocolException {
+        if (buffer.remaining() < bytes) {
+            throw new ProtocolException("Unexpected end of message");
+        }
+    }
+
+    public int readByte() throws ProtocolException {
+        require(1);
+        return buffer.get();
+    }
+
+    public boolean readBoolean() throws ProtocolException {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() throws ProtocolException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new ProtocolException("Malformed varint");
+    }
+
+    public long readVarLong() throws ProtocolException {
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new ProtocolException("Malformed varlong");
+    }
+
+    public int readSignedInt() throws ProtocolException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readSignedLong() throws ProtocolException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public double readDouble() throws ProtocolException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    public int readLength() throws ProtocolException {
+        int length = readVarInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new ProtocolException("Invalid length: " + length);
+        }
+        return length;
+    }
+
+    public String readString() throws ProtocolException {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        if (length < 0 || length > buffer.remaining()) {
+            throw new ProtocolException("Invalid string length: " + length);
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+}
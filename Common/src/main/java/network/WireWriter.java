@@ -0,0 +1,169 @@
+package network;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Растущий буфер для бинарного кодирования. Длины и целые числа пишутся
+ * в формате varint (zigzag для знаковых), строки — в UTF-8.
+ * <p>
+ * С {@link Sink} буфер не растёт: заполненный буфер сбрасывается в приёмник,
+ * и сообщение любого размера кодируется через один и тот же массив.
+ */
+public final class WireWriter {
+
+    public interface Sink {
+        void write(byte[] data, int offset, int length);
+    }
+
+    private byte[] buffer;
+    private int position;
+    private final Sink sink;
+    private int flushed;
+
+    public WireWriter() {
+        this(256);
+    }
+
+    public WireWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+        this.sink = null;
+    }
+
+    /**
+     * @param buffer буфер фиксированного размера (не меньше 16 байт), переиспользуется между сообщениями
+     */
+    public WireWriter(byte[] buffer, Sink sink) {
+        if (buffer.length < 16) {
+            throw new IllegalArgumentException("Buffer is too small: " + buffer.length);
+        }
+        this.buffer = buffer;
+        this.sink = sink;
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = position + additional;
+        if (required > buffer.length) {
+            if (sink != null) {
+                flush();
+            } else {
+                buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Отдаёт накопленные байты приёмнику. Без приёмника ничего не делает.
+     */
+    public void flush() {
+        if (sink != null && position > 0) {
+            sink.write(buffer, 0, position);
+            flushed += position;
+            position = 0;
+        }
+    }
+
+    /**
+     * Начинает новое сообщение в том же буфере.
+     */
+    public void reset() {
+        position = 0;
+        flushed = 0;
+    }
+
+    public WireWriter writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    public WireWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    public WireWriter writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    public WireWriter writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    public WireWriter writeSignedInt(int value) {
+        return writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public WireWriter writeSignedLong(long value) {
+        return writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public WireWriter writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (bits >>> shift);
+        }
+        return this;
+    }
+
+    public WireWriter writeBytes(byte[] data, int offset, int length) {
+        if (sink != null && length > buffer.length - position) {
+            // Не помещается даже в пустой буфер — сразу в приёмник
+            flush();
+            if (length > buffer.length) {
+                sink.write(data, offset, length);
+                flushed += length;
+                return this;
+            }
+        }
+        ensureCapacity(length);
+        System.arraycopy(data, offset, buffer, position, length);
+        position += length;
+        return this;
+    }
+
+    /**
+     * null кодируется длиной 0, остальные строки — длиной + 1.
+     */
+    public WireWriter writeString(String value) {
+        if (value == null) {
+            return writeVarInt(0);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        return writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Сколько байт записано с последнего {@link #reset()}, включая сброшенные в приёмник.
+     */
+    public int size() {
+        return flushed + position;
+    }
+
+    /**
+     * Сколько байт ещё не сброшено в приёмник.
+     */
+    public int buffered() {
+        return position;
+    }
+
+    public byte[] toByteArray() {
+        if (flushed > 0) {
+            throw new IllegalStateException("Part of the message is already flushed to the sink");
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+}
@@ -0,0 +1,84 @@
+package utils;
+
+import data.MusicBand;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.stream.Collectors;
+
+/**
+ * Текстовое представление коллекции для команд чтения. Используется и сервером,
+ * и локальной репликой клиента, чтобы вывод совпадал символ в символ.
+ */
+public final class CollectionFormatter {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy HH-mm-ss z");
+
+    private CollectionFormatter() {
+    }
+
+    public static String info(ZonedDateTime initializationDate, NavigableMap<Long, MusicBand> musicBands) {
+        if (!musicBands.isEmpty()) {
+            return String.format("Type: TreeMap<Long, MusicBand>\n" +
+                            "Initialization date: %s\n" +
+                            "Size of collection: %d\n" +
+                            "First key: %d\n" +
+                            "Last key: %d",
+                    initializationDate.format(DATE_FORMAT),
+                    musicBands.size(),
+                    musicBands.firstKey(),
+                    musicBands.lastKey());
+        } else {
+            return String.format("Type: TreeMap<Long, MusicBand>\n" +
+                            "Initialization date: %s\n" +
+                            "Size of collection: 0",
+                    initializationDate.format(DATE_FORMAT));
+        }
+    }
+
+    public static String show(Collection<MusicBand> musicBands) {
+        if (musicBands.isEmpty()) {
+            return "The collection is empty";
+        }
+        String bandsString = musicBands.stream()
+                .map(MusicBand::toString)
+                .collect(Collectors.joining("\n"));
+
+        return "The collection contains " + musicBands.size() + " items:\n" + bandsString;
+    }
+
+    public static String printSorted(Collection<MusicBand> musicBands, boolean descending) {
+        if (musicBands.isEmpty()) {
+            return "The collection is empty";
+        }
+        Comparator<MusicBand> order = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        String bandsString = musicBands.stream()
+                .sorted(order)
+                .map(MusicBand::toString)
+                .collect(Collectors.joining("\n"));
+
+        return "Collection elements in " + (descending ? "descending" : "ascending")
+                + " order (by 'name'):\n" + bandsString;
+    }
+
+    public static String filterStartsWithName(Collection<MusicBand> musicBands, String name) {
+        List<MusicBand> bands = musicBands.stream()
+                .filter(band -> band.getName().startsWith(name))
+                .collect(Collectors.toList());
+
+        if (bands.isEmpty()) {
+            return "No music groups found whose names start with \"" + name + "\"";
+        }
+
+        String bandsString = bands.stream()
+                .map(MusicBand::toString)
+                .collect(Collectors.joining("\n"));
+
+        return "Found " + bands.size() +
+                " music groups whose names start with \"" + name + "\"\n" +
+                bandsString;
+    }
+}
@@ -7,7 +7,8 @@ import java.util.Map;
 import java.util.TreeMap;
 
 public class CommandMap {
-    public static Map<String, Command> createMapWithCommands(Executor executor, DatabaseManager dbManager) {
+    public static Map<String, Command> createMapWithCommands(Executor executor, DatabaseManager dbManager,
+                                                             SessionManager sessionManager) {
         Map<String, Command> commands = new TreeMap<>();
 
         Help help = new Help(executor);
@@ -30,7 +31,9 @@ public class CommandMap {
         Execute_script execute_script = new Execute_script(executor);
 
         RegisterCommand registerCommand = new RegisterCommand(dbManager);
-        LoginCommand loginCommand = new LoginCommand(dbManager);
+        LoginCommand loginCommand = new LoginCommand(dbManager, sessionManager);
+
+        Stats stats = new Stats(dbManager.getMetrics());
 
         commands.put(help.getCommandName(), help);
         commands.put(info.getCommandName(), info);
@@ -54,6 +57,8 @@ public class CommandMap {
         commands.put(registerCommand.getCommandName(), registerCommand);
         commands.put(loginCommand.getCommandName(), loginCommand);
 
+        commands.put(stats.getCommandName(), stats);
+
         return commands;
     }
 }
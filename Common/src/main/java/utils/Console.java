@@ -26,6 +26,8 @@ public class Console {
             "remove_lower",
             "replace_if_lower",
             "execute_script",
+            "watch",
+            "stats",
             "shut_down_the_server"
     ));
 
@@ -0,0 +1,103 @@
+package utils;
+
+import data.User;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU-кэш успешных проверок пароля перед {@link DatabaseManager#authenticateUser}.
+ * Хранится не сам хэш пароля, а его SHA-256; неудачные попытки не кэшируются.
+ * Запись живёт не дольше TTL и сбрасывается явно при регистрации или смене пароля.
+ */
+public class CredentialCache {
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    });
+
+    private final long ttlMillis;
+    private final Map<String, CachedCredential> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CredentialCache(int capacity, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, CachedCredential>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedCredential> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return пользователь, если эта пара логин/хэш недавно прошла проверку, иначе null
+     */
+    public User get(String login, String passwordHash) {
+        byte[] digest = digest(passwordHash);
+        synchronized (entries) {
+            CachedCredential entry = entries.get(login);
+            if (entry != null && entry.expiresAt >= System.currentTimeMillis()
+                    && MessageDigest.isEqual(entry.digest, digest)) {
+                hits.incrementAndGet();
+                return entry.user;
+            }
+            if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(login);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String login, String passwordHash, User user) {
+        CachedCredential entry = new CachedCredential(digest(passwordHash), user, System.currentTimeMillis() + ttlMillis);
+        synchronized (entries) {
+            entries.put(login, entry);
+        }
+    }
+
+    public void invalidate(String login) {
+        synchronized (entries) {
+            entries.remove(login);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static byte[] digest(String passwordHash) {
+        return DIGESTS.get().digest(passwordHash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class CachedCredential {
+        private final byte[] digest;
+        private final User user;
+        private final long expiresAt;
+
+        private CachedCredential(byte[] digest, User user, long expiresAt) {
+            this.digest = digest;
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -4,11 +4,22 @@ import data.*;
 
 import java.sql.*;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TreeMap;
 
 public class DatabaseManager {
+    private static final int CREDENTIAL_CACHE_CAPACITY = 10000;
+    private static final long CREDENTIAL_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+
     private final Connection connection;
+    private final CredentialCache credentialCache =
+            new CredentialCache(CREDENTIAL_CACHE_CAPACITY, CREDENTIAL_CACHE_TTL_MILLIS);
+    private final Metrics metrics = new Metrics();
 
     public DatabaseManager(String url, String user, String password) throws SQLException {
         try {
@@ -36,123 +47,214 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Без подключения к БД — для подклассов, которые переопределяют работу с хранилищем
+     * (например, хранилище в памяти для бенчмарков).
+     */
+    protected DatabaseManager() {
+        this.connection = null;
+    }
+
     public User authenticateUser(String login, String passwordHash) throws SQLException {
-        String sql = "SELECT id, login FROM users WHERE login = ? AND password_hash = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, login);
-            stmt.setString(2, passwordHash);
-            try (ResultSet rs = stmt.executeQuery()) { // ← ДОБАВЛЕНО try-with-resources!
-                if (rs.next()) {
-                    int userId = rs.getInt("id");
-                    String userLogin = rs.getString("login");
-                    return new User(userId, userLogin);
+        User cached = credentialCache.get(login, passwordHash);
+        if (cached != null) {
+            return cached;
+        }
+
+        long started = System.nanoTime();
+        try {
+            String sql = "SELECT id, login FROM users WHERE login = ? AND password_hash = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, login);
+                stmt.setString(2, passwordHash);
+                try (ResultSet rs = stmt.executeQuery()) { // ← ДОБАВЛЕНО try-with-resources!
+                    if (rs.next()) {
+                        int userId = rs.getInt("id");
+                        String userLogin = rs.getString("login");
+                        User user = new User(userId, userLogin);
+                        credentialCache.put(login, passwordHash, user);
+                        return user;
+                    }
                 }
             }
+            return null;
+        } finally {
+            metrics.recordDbCall("authenticate", System.nanoTime() - started);
         }
-        return null;
     }
 
     public boolean registerUser(String login, String passwordHash) throws SQLException {
-        String sql = "INSERT INTO users (login, password_hash) VALUES (?, ?) " +
-                "ON CONFLICT (login) DO NOTHING RETURNING id";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, login);
-            stmt.setString(2, passwordHash);
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
+        long started = System.nanoTime();
+        try {
+            invalidateCredentials(login);
+            String sql = "INSERT INTO users (login, password_hash) VALUES (?, ?) " +
+                    "ON CONFLICT (login) DO NOTHING RETURNING id";
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, login);
+                stmt.setString(2, passwordHash);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
             }
+        } finally {
+            metrics.recordDbCall("register_user", System.nanoTime() - started);
         }
     }
 
+    /**
+     * Сбрасывает кэшированную проверку пароля; вызывать при любой смене учётных данных.
+     */
+    public void invalidateCredentials(String login) {
+        credentialCache.invalidate(login);
+    }
+
+    public CredentialCache getCredentialCache() {
+        return credentialCache;
+    }
+
+    /**
+     * Счётчики сервера; здесь же записывается время каждого запроса к БД.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
     public boolean insertMusicBand(Long key, MusicBand band, int ownerId) throws SQLException {
-        Integer studioId = null;
-        if (band.getStudio() != null && band.getStudio().getName() != null) {
-            studioId = getOrInsertStudio(band.getStudio().getName());
-        }
+        long started = System.nanoTime();
+        try {
+            Integer studioId = null;
+            if (band.getStudio() != null && band.getStudio().getName() != null) {
+                studioId = getOrInsertStudio(band.getStudio().getName());
+            }
 
-        String sql = "INSERT INTO music_bands (id, owner_id, name, coordinate_x, coordinate_y, " +
-                "creation_date, number_of_participants, description, genre, studio_id, collection_key) " +
-                "VALUES (DEFAULT, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) RETURNING id";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, ownerId);
-            stmt.setString(2, band.getName());
-            stmt.setDouble(3, band.getCoordinates().getX());
-            stmt.setInt(4, band.getCoordinates().getY());
-            stmt.setTimestamp(5, Timestamp.from(band.getCreationDate().toInstant()));
-            stmt.setInt(6, band.getNumberOfParticipants());
-            stmt.setString(7, band.getDescription());
-            stmt.setString(8, band.getGenre().name());
-            stmt.setObject(9, studioId, Types.INTEGER);
-            stmt.setLong(10, key);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    Long generatedId = rs.getLong("id");
-                    band.setId(generatedId);
-                    return true;
+            String sql = "INSERT INTO music_bands (id, owner_id, name, coordinate_x, coordinate_y, " +
+                    "creation_date, number_of_participants, description, genre, studio_id, collection_key) " +
+                    "VALUES (DEFAULT, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) RETURNING id, row_version";
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setInt(1, ownerId);
+                stmt.setString(2, band.getName());
+                stmt.setDouble(3, band.getCoordinates().getX());
+                stmt.setInt(4, band.getCoordinates().getY());
+                stmt.setTimestamp(5, Timestamp.from(band.getCreationDate().toInstant()));
+                stmt.setInt(6, band.getNumberOfParticipants());
+                stmt.setString(7, band.getDescription());
+                stmt.setString(8, band.getGenre().name());
+                stmt.setObject(9, studioId, Types.INTEGER);
+                stmt.setLong(10, key);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        Long generatedId = rs.getLong("id");
+                        band.setId(generatedId);
+                        band.setVersion(rs.getLong("row_version"));
+                        return true;
+                    }
                 }
             }
-        }
-        return false;
-    }
-
-    public boolean updateMusicBand(Long key, MusicBand band, int ownerId) throws SQLException {
-        if (!checkOwnership(key, ownerId)) {
             return false;
+        } finally {
+            metrics.recordDbCall("insert", System.nanoTime() - started);
         }
+    }
 
-        Integer studioId = null;
-        if (band.getStudio() != null && band.getStudio().getName() != null) {
-            studioId = getOrInsertStudio(band.getStudio().getName());
-        }
-
-        String sql = "UPDATE music_bands SET name = ?, coordinate_x = ?, coordinate_y = ?, " +
-                "number_of_participants = ?, description = ?, genre = ?, " +
-                "studio_id = ? WHERE collection_key = ? AND owner_id = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, band.getName());
-            stmt.setDouble(2, band.getCoordinates().getX());
-            stmt.setInt(3, band.getCoordinates().getY());
-            stmt.setInt(4, band.getNumberOfParticipants());
-            stmt.setString(5, band.getDescription());
-            stmt.setString(6, band.getGenre().name());
-
-            if (studioId != null) {
-                stmt.setInt(7, studioId);
-            } else {
-                stmt.setNull(7, Types.INTEGER);
+    /**
+     * Обновляет строку, только если она принадлежит ownerId и с момента чтения не менялась.
+     *
+     * @param expectedVersion row_version, с которым группа была прочитана
+     * @return false, если строки с таким ключом, владельцем и версией нет
+     */
+    public boolean updateMusicBand(Long key, MusicBand band, int ownerId, long expectedVersion) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            Integer studioId = null;
+            if (band.getStudio() != null && band.getStudio().getName() != null) {
+                studioId = getOrInsertStudio(band.getStudio().getName());
             }
 
-            stmt.setLong(8, key);
-            stmt.setInt(9, ownerId);
+            String sql = "UPDATE music_bands SET name = ?, coordinate_x = ?, coordinate_y = ?, " +
+                    "number_of_participants = ?, description = ?, genre = ?, " +
+                    "studio_id = ?, row_version = row_version + 1 " +
+                    "WHERE collection_key = ? AND owner_id = ? AND row_version = ?";
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, band.getName());
+                stmt.setDouble(2, band.getCoordinates().getX());
+                stmt.setInt(3, band.getCoordinates().getY());
+                stmt.setInt(4, band.getNumberOfParticipants());
+                stmt.setString(5, band.getDescription());
+                stmt.setString(6, band.getGenre().name());
+
+                if (studioId != null) {
+                    stmt.setInt(7, studioId);
+                } else {
+                    stmt.setNull(7, Types.INTEGER);
+                }
 
-            int affectedRows = stmt.executeUpdate();
-            return affectedRows > 0;
-        }
-    }
+                stmt.setLong(8, key);
+                stmt.setInt(9, ownerId);
+                stmt.setLong(10, expectedVersion);
 
-    public boolean removeMusicBand(Long key, int userId) throws SQLException {
-        if (!checkOwnership(key, userId)) {
-            return false;
+                int affectedRows = stmt.executeUpdate();
+                return affectedRows > 0;
+            }
+        } finally {
+            metrics.recordDbCall("update", System.nanoTime() - started);
         }
+    }
 
-        String sql = "DELETE FROM music_bands WHERE collection_key = ? AND owner_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, key); // collection_key
-            stmt.setInt(2, userId);
-            int affectedRows = stmt.executeUpdate();
-            return affectedRows > 0;
+    /**
+     * Удаляет строку, только если она принадлежит userId и с момента чтения не менялась.
+     */
+    public boolean removeMusicBand(Long key, int userId, long expectedVersion) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            String sql = "DELETE FROM music_bands WHERE collection_key = ? AND owner_id = ? AND row_version = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setLong(1, key); // collection_key
+                stmt.setInt(2, userId);
+                stmt.setLong(3, expectedVersion);
+                int affectedRows = stmt.executeUpdate();
+                return affectedRows > 0;
+            }
+        } finally {
+            metrics.recordDbCall("remove", System.nanoTime() - started);
         }
     }
 
-    public int clearUserMusicBands(int userId) throws SQLException {
-        String sql = "DELETE FROM music_bands WHERE owner_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, userId);
-            return stmt.executeUpdate();
+    /**
+     * Удаляет несколько строк одним пакетом с той же проверкой владельца и версии.
+     *
+     * @param expectedVersions ключ -> row_version, с которым группа была прочитана
+     * @return ключи, которые действительно удалены; остальные изменились или уже удалены
+     */
+    public Set<Long> removeMusicBands(Map<Long, Long> expectedVersions, int userId) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            Set<Long> removed = new HashSet<>();
+            if (expectedVersions.isEmpty()) {
+                return removed;
+            }
+            List<Long> keys = new ArrayList<>(expectedVersions.keySet());
+            String sql = "DELETE FROM music_bands WHERE collection_key = ? AND owner_id = ? AND row_version = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                for (Long key : keys) {
+                    stmt.setLong(1, key);
+                    stmt.setInt(2, userId);
+                    stmt.setLong(3, expectedVersions.get(key));
+                    stmt.addBatch();
+                }
+                int[] affectedRows = stmt.executeBatch();
+                for (int i = 0; i < affectedRows.length; i++) {
+                    if (affectedRows[i] > 0) {
+                        removed.add(keys.get(i));
+                    }
+                }
+            }
+            return removed;
+        } finally {
+            metrics.recordDbCall("remove_batch", System.nanoTime() - started);
         }
     }
 
@@ -175,7 +277,9 @@ public class DatabaseManager {
             }
         }
 
-        String insertSql = "INSERT INTO studios (name) VALUES (?) RETURNING id";
+        // Запись идёт без общей блокировки, поэтому ту же студию может одновременно добавлять другой запрос
+        String insertSql = "INSERT INTO studios (name) VALUES (?) " +
+                "ON CONFLICT (name) DO UPDATE SET name = EXCLUDED.name RETURNING id";
         try (PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
             insertStmt.setString(1, studioName);
             try (ResultSet rs = insertStmt.executeQuery()) {
@@ -189,43 +293,39 @@ public class DatabaseManager {
     }
 
     public TreeMap<Long, MusicBand> loadCollection() throws SQLException {
-        TreeMap<Long, MusicBand> collection = new TreeMap<>();
-        String sql = "SELECT mb.*, s.name as studio_name FROM music_bands mb " +
-                "LEFT JOIN studios s ON mb.studio_id = s.id";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-
-            while (rs.next()) {
-                Long collectionKey = rs.getLong("collection_key");
-                Long id = rs.getLong("id");
-
-                MusicBand band = new MusicBand(
-                        id,
-                        rs.getString("name"),
-                        new Coordinates(rs.getDouble("coordinate_x"), rs.getInt("coordinate_y")),
-                        rs.getTimestamp("creation_date").toInstant().atZone(ZoneId.systemDefault()),
-                        rs.getInt("number_of_participants"),
-                        rs.getString("description"),
-                        MusicGenre.valueOf(rs.getString("genre")),
-                        rs.getString("studio_name") != null ?
-                                new Studio(rs.getString("studio_name")) : null,
-                        rs.getInt("owner_id")
-                );
-
-                collection.put(collectionKey, band);
-            }
-        }
-        return collection;
-    }
+        long started = System.nanoTime();
+        try {
+            TreeMap<Long, MusicBand> collection = new TreeMap<>();
+            String sql = "SELECT mb.*, s.name as studio_name FROM music_bands mb " +
+                    "LEFT JOIN studios s ON mb.studio_id = s.id";
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
 
-    public boolean checkOwnership(long collectionKey, int userId) throws SQLException {
-        String sql = "SELECT owner_id FROM music_bands WHERE collection_key = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, collectionKey);
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next() && rs.getInt("owner_id") == userId;
+                while (rs.next()) {
+                    Long collectionKey = rs.getLong("collection_key");
+                    Long id = rs.getLong("id");
+
+                    MusicBand band = new MusicBand(
+                            id,
+                            rs.getString("name"),
+                            new Coordinates(rs.getDouble("coordinate_x"), rs.getInt("coordinate_y")),
+                            rs.getTimestamp("creation_date").toInstant().atZone(ZoneId.systemDefault()),
+                            rs.getInt("number_of_participants"),
+                            rs.getString("description"),
+                            MusicGenre.valueOf(rs.getString("genre")),
+                            rs.getString("studio_name") != null ?
+                                    new Studio(rs.getString("studio_name")) : null,
+                            rs.getInt("owner_id")
+                    );
+                    band.setVersion(rs.getLong("row_version"));
+
+                    collection.put(collectionKey, band);
+                }
             }
+            return collection;
+        } finally {
+            metrics.recordDbCall("load_collection", System.nanoTime() - started);
         }
     }
 
@@ -259,9 +359,14 @@ public class DatabaseManager {
                         "description TEXT," +
                         "genre VARCHAR(50) NOT NULL CHECK (genre IN ('ROCK', 'PSYCHEDELIC_CLOUD_RAP', 'JAZZ', 'SOUL', 'POST_ROCK'))," +
                         "studio_id INTEGER REFERENCES studios(id) ON DELETE SET NULL," +
-                        "collection_key BIGINT NOT NULL UNIQUE" +
+                        "collection_key BIGINT NOT NULL UNIQUE," +
+                        "row_version BIGINT NOT NULL DEFAULT 0" +
                         ");";
 
+        // Таблицы, созданные до появления row_version
+        String addRowVersionSQL =
+                "ALTER TABLE music_bands ADD COLUMN IF NOT EXISTS row_version BIGINT NOT NULL DEFAULT 0;";
+
         String createIndexesSQL =
                 "CREATE INDEX IF NOT EXISTS idx_music_bands_owner_id ON music_bands(owner_id);" +
                         "CREATE INDEX IF NOT EXISTS idx_music_bands_creation_date ON music_bands(creation_date);" +
@@ -274,6 +379,7 @@ public class DatabaseManager {
             stmt.execute(createStudiosTableSQL);
             stmt.execute(createSequenceSQL);
             stmt.execute(createMusicBandsTableSQL);
+            stmt.execute(addRowVersionSQL);
             stmt.execute(createIndexesSQL);
 
             System.out.println("Database tables initialized successfully.");
@@ -296,35 +402,41 @@ public class DatabaseManager {
     }
 
     public TreeMap<Long, MusicBand> loadUserCollection(int userId) throws SQLException {
-        TreeMap<Long, MusicBand> userCollection = new TreeMap<>();
-        String sql = "SELECT mb.*, s.name as studio_name FROM music_bands mb " +
-                "LEFT JOIN studios s ON mb.studio_id = s.id " +
-                "WHERE mb.owner_id = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, userId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Long collectionKey = rs.getLong("collection_key");
-                    Long id = rs.getLong("id");
-                    int ownerId = rs.getInt("owner_id");
-
-                    MusicBand band = new MusicBand(
-                            id,
-                            rs.getString("name"),
-                            new Coordinates(rs.getDouble("coordinate_x"), rs.getInt("coordinate_y")),
-                            rs.getTimestamp("creation_date").toInstant().atZone(ZoneId.systemDefault()),
-                            rs.getInt("number_of_participants"),
-                            rs.getString("description"),
-                            MusicGenre.valueOf(rs.getString("genre")),
-                            rs.getString("studio_name") != null ?
-                                    new Studio(rs.getString("studio_name")) : null,
-                            ownerId
-                    );
-                    userCollection.put(collectionKey, band);
+        long started = System.nanoTime();
+        try {
+            TreeMap<Long, MusicBand> userCollection = new TreeMap<>();
+            String sql = "SELECT mb.*, s.name as studio_name FROM music_bands mb " +
+                    "LEFT JOIN studios s ON mb.studio_id = s.id " +
+                    "WHERE mb.owner_id = ?";
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setInt(1, userId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Long collectionKey = rs.getLong("collection_key");
+                        Long id = rs.getLong("id");
+                        int ownerId = rs.getInt("owner_id");
+
+                        MusicBand band = new MusicBand(
+                                id,
+                                rs.getString("name"),
+                                new Coordinates(rs.getDouble("coordinate_x"), rs.getInt("coordinate_y")),
+                                rs.getTimestamp("creation_date").toInstant().atZone(ZoneId.systemDefault()),
+                                rs.getInt("number_of_participants"),
+                                rs.getString("description"),
+                                MusicGenre.valueOf(rs.getString("genre")),
+                                rs.getString("studio_name") != null ?
+                                        new Studio(rs.getString("studio_name")) : null,
+                                ownerId
+                        );
+                        band.setVersion(rs.getLong("row_version"));
+                        userCollection.put(collectionKey, band);
+                    }
                 }
             }
+            return userCollection;
+        } finally {
+            metrics.recordDbCall("load_user_collection", System.nanoTime() - started);
         }
-        return userCollection;
     }
 }
\ No newline at end of file
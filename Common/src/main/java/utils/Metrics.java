@@ -0,0 +1,91 @@
+package utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Счётчики сервера для команды stats: время выполнения команд и запросов к БД,
+ * плюс показатели, которые считаются в момент чтения (очереди пулов, трафик).
+ * Запись идёт без блокировок и вызывается из всех рабочих потоков.
+ */
+public class Metrics {
+    private final long startedAt = System.currentTimeMillis();
+    private final ConcurrentMap<String, Timer> commands = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> dbCalls = new ConcurrentHashMap<>();
+    // Регистрируются один раз при запуске, читаются только командой stats
+    private final Map<String, LongSupplier> gauges = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public void recordCommand(String command, long nanos) {
+        timer(commands, command).record(nanos);
+    }
+
+    public void recordDbCall(String operation, long nanos) {
+        timer(dbCalls, operation).record(nanos);
+    }
+
+    /**
+     * Показатель, значение которого берётся при каждом выводе статистики.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    private static Timer timer(ConcurrentMap<String, Timer> timers, String name) {
+        Timer timer = timers.get(name);
+        return timer != null ? timer : timers.computeIfAbsent(name, ignored -> new Timer());
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Uptime: ").append(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startedAt))
+                .append(" s\n");
+        appendTimers(report, "Commands", commands);
+        appendTimers(report, "Database calls", dbCalls);
+        report.append("Server:\n");
+        synchronized (gauges) {
+            for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+                report.append(String.format("  %-32s %12d%n", gauge.getKey(), gauge.getValue().getAsLong()));
+            }
+        }
+        return report.toString().trim();
+    }
+
+    private static void appendTimers(StringBuilder report, String title, Map<String, Timer> timers) {
+        report.append(title).append(" (latency in ms):\n");
+        if (timers.isEmpty()) {
+            report.append("  none yet\n");
+            return;
+        }
+        report.append(String.format("  %-24s %10s %9s %9s %9s %9s %9s%n",
+                "name", "count", "mean", "p50", "p99", "p99.9", "max"));
+        for (Map.Entry<String, Timer> entry : new TreeMap<>(timers).entrySet()) {
+            Timer timer = entry.getValue();
+            long count = timer.histogram.count();
+            report.append(String.format("  %-24s %10d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), count,
+                    count == 0 ? 0.0 : timer.totalMicros.sum() / 1000.0 / count,
+                    timer.histogram.percentile(50) / 1000.0,
+                    timer.histogram.percentile(99) / 1000.0,
+                    timer.histogram.percentile(99.9) / 1000.0,
+                    timer.histogram.max() / 1000.0));
+        }
+    }
+
+    private static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder totalMicros = new LongAdder();
+
+        private void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            histogram.record(micros);
+            totalMicros.add(micros);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package utils;
+
+import data.User;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Сессии, открытые командой login. Клиент присылает токен сессии вместо
+ * логина и хэша пароля, поэтому команды не ходят в БД за проверкой пароля.
+ * Сессия закрывается, если ею не пользовались дольше заданного времени.
+ * У пользователя не больше заданного числа сессий: новый вход закрывает самую старую,
+ * так что повторные входы (в том числе продление сессии клиентом) не копят токены.
+ */
+public class SessionManager {
+    public static final String SESSION_EXPIRED = "Error: Session expired. Please login again.";
+
+    public static final int DEFAULT_MAX_SESSIONS_PER_USER = 16;
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // Токены пользователя от старых к новым; меняется только внутри compute
+    private final Map<Integer, Deque<String>> userTokens = new ConcurrentHashMap<>();
+    private final long idleTimeoutMillis;
+    private final int maxSessionsPerUser;
+
+    public SessionManager(long idleTimeoutMillis) {
+        this(idleTimeoutMillis, DEFAULT_MAX_SESSIONS_PER_USER);
+    }
+
+    public SessionManager(long idleTimeoutMillis, int maxSessionsPerUser) {
+        if (maxSessionsPerUser < 1) {
+            throw new IllegalArgumentException("maxSessionsPerUser must be positive");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxSessionsPerUser = maxSessionsPerUser;
+    }
+
+    public String open(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(user, System.currentTimeMillis()));
+        userTokens.compute(user.getId(), (id, tokens) -> {
+            if (tokens == null) {
+                tokens = new ArrayDeque<>();
+            }
+            tokens.addLast(token);
+            while (tokens.size() > maxSessionsPerUser) {
+                sessions.remove(tokens.pollFirst());
+            }
+            return tokens;
+        });
+        return token;
+    }
+
+    /**
+     * @return пользователь сессии или null, если токен неизвестен или сессия истекла
+     */
+    public User get(String token) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.lastAccess > idleTimeoutMillis) {
+            remove(token, session);
+            return null;
+        }
+        session.lastAccess = now;
+        return session.user;
+    }
+
+    public void close(String token) {
+        Session session = sessions.get(token);
+        if (session != null) {
+            remove(token, session);
+        }
+    }
+
+    public void expire() {
+        long deadline = System.currentTimeMillis() - idleTimeoutMillis;
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            if (entry.getValue().lastAccess < deadline) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private void remove(String token, Session session) {
+        if (!sessions.remove(token, session)) {
+            return;
+        }
+        userTokens.computeIfPresent(session.user.getId(), (id, tokens) -> {
+            tokens.remove(token);
+            return tokens.isEmpty() ? null : tokens;
+        });
+    }
+
+    private static final class Session {
+        private final User user;
+        private volatile long lastAccess;
+
+        private Session(User user, long lastAccess) {
+            this.user = user;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package network;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class ChunkAssemblerTest extends TestCase {
+    private static final long REQUEST_ID = 42L;
+
+    private static Frame chunk(long requestId, byte flags, int index, int count, byte[] data) throws Exception {
+        ByteBuffer encoded = Frame.encode(Frame.Type.DATA, flags, requestId, index, count, data, 0, data.length);
+        return Frame.decode(encoded);
+    }
+
+    private static Frame chunk(int index, int count, String text) throws Exception {
+        return chunk(REQUEST_ID, (byte) 0, index, count, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(byte[] data) {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    public void testSingleChunk() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(REQUEST_ID);
+        assertFalse(assembler.hasStarted());
+        assertTrue(assembler.add(chunk(0, 1, "целиком")));
+        assertEquals("целиком", text(assembler.assemble()));
+    }
+
+    public void testOutOfOrderChunks() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(REQUEST_ID);
+        assertFalse(assembler.add(chunk(2, 3, "c")));
+        assertTrue(assembler.hasStarted());
+        assertFalse(assembler.add(chunk(0, 3, "a")));
+        assertTrue(assembler.add(chunk(1, 3, "b")));
+        assertEquals("abc", text(assembler.assemble()));
+    }
+
+    public void testDuplicatesAreCountedOnce() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(REQUEST_ID);
+        assertFalse(assembler.add(chunk(0, 2, "a")));
+        assertFalse(assembler.add(chunk(0, 2, "a")));
+        assertFalse(assembler.isComplete());
+        // Повтор не заменяет уже принятый фрагмент
+        assertFalse(assembler.add(chunk(0, 2, "x")));
+        assertTrue(assembler.add(chunk(1, 2, "b")));
+        assertTrue(assembler.add(chunk(1, 2, "b")));
+        assertEquals("ab", text(assembler.assemble()));
+    }
+
+    public void testMissingChunks() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(REQUEST_ID);
+        assertEquals(0, assembler.missing().length);
+
+        assembler.add(chunk(1, 5, "b"));
+        assembler.add(chunk(3, 5, "d"));
+        assertTrue(Arrays.equals(new int[]{0, 2, 4}, assembler.missing()));
+
+        assembler.add(chunk(0, 5, "a"));
+        assembler.add(chunk(4, 5, "e"));
+        assertTrue(Arrays.equals(new int[]{2}, assembler.missing()));
+
+        assembler.add(chunk(2, 5, "c"));
+        assertEquals(0, assembler.missing().length);
+        assertEquals("abcde", text(assembler.assemble()));
+    }
+
+    public void testIncompleteResponseCannotBeAssembled() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(REQUEST_ID);
+        assembler.add(chunk(0, 2, "a"));
+        try {
+            assembler.assemble();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+            // ожидаемо
+        }
+    }
+
+    public void testForeignFramesAreIgnored() throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(REQUEST_ID);
+        assertFalse(assembler.add(chunk(REQUEST_ID + 1, (byte) 0, 0, 1, new byte[]{1})));
+        assertFalse(assembler.add(Frame.decode(Frame.encodeAck(REQUEST_ID))));
+        assertFalse(assembler.hasStarted());
+
+        assembler.add(chunk(0, 2, "a"));
+        // Кадр с другим числом фрагментов не относится к этому ответу
+        assertFalse(assembler.add(chunk(1, 3, "b")));
+        assertTrue(Arrays.equals(new int[]{1}, assembler.missing()));
+        assertTrue(assembler.add(chunk(1, 2, "b")));
+        assertEquals("ab", text(assembler.assemble()));
+    }
+
+    public void testDeflatedResponseIsInflated() throws Exception {
+        byte[] original = new byte[200_000];
+        for (int i = 0; i < original.length; i++) {
+            original[i] = (byte) (i % 7);
+        }
+        byte[] compressed = Compression.deflate(original);
+        int count = (compressed.length + 9) / 10;
+        ChunkAssembler assembler = new ChunkAssembler(REQUEST_ID);
+        // Фрагменты по 10 байт в обратном порядке
+        for (int i = count - 1; i >= 0; i--) {
+            byte[] part = Arrays.copyOfRange(compressed, i * 10, Math.min(compressed.length, (i + 1) * 10));
+            assembler.add(chunk(REQUEST_ID, Frame.FLAG_DEFLATED, i, count, part));
+        }
+        assertTrue(assembler.isComplete());
+        assertEquals(Frame.FLAG_DEFLATED, assembler.getFlags());
+        assertTrue(Arrays.equals(original, assembler.assemble()));
+    }
+}
@@ -0,0 +1,111 @@
+package network;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static network.WireReaderTest.assertProtocolError;
+
+public class FrameTest extends TestCase {
+
+    private static ByteBuffer frame(Frame.Type type, int index, int count, byte[] payload) {
+        return Frame.encode(type, (byte) 0, 77L, index, count, payload, 0, payload.length);
+    }
+
+    public void testHeaderRoundTrip() throws Exception {
+        byte[] payload = {1, 2, 3};
+        ByteBuffer encoded = Frame.encode(Frame.Type.DATA, Frame.FLAG_DEFLATED, -9L, 2, 5, payload, 0, 3);
+        assertEquals(Frame.HEADER_SIZE + 3, encoded.remaining());
+
+        Frame frame = Frame.decode(encoded);
+        assertEquals(Frame.Type.DATA, frame.getType());
+        assertTrue(frame.hasFlag(Frame.FLAG_DEFLATED));
+        assertFalse(frame.hasFlag(Frame.FLAG_ACCEPTS_DEFLATE));
+        assertEquals(-9L, frame.getRequestId());
+        assertEquals(2, frame.getIndex());
+        assertEquals(5, frame.getCount());
+        ByteBuffer body = frame.getPayload();
+        byte[] decoded = new byte[body.remaining()];
+        body.get(decoded);
+        assertTrue(Arrays.equals(payload, decoded));
+    }
+
+    public void testMalformedHeadersAreRejected() {
+        assertProtocolError(() -> Frame.decode(ByteBuffer.allocate(Frame.HEADER_SIZE - 1)));
+
+        ByteBuffer magic = frame(Frame.Type.DATA, 0, 1, new byte[0]);
+        magic.putShort(0, (short) 0x1234);
+        assertProtocolError(() -> Frame.decode(magic));
+
+        ByteBuffer version = frame(Frame.Type.DATA, 0, 1, new byte[0]);
+        version.put(2, (byte) (Frame.VERSION + 1));
+        assertProtocolError(() -> Frame.decode(version));
+
+        ByteBuffer type = frame(Frame.Type.DATA, 0, 1, new byte[0]);
+        type.put(3, (byte) Frame.Type.values().length);
+        assertProtocolError(() -> Frame.decode(type));
+    }
+
+    public void testChunkBoundsAreChecked() throws Exception {
+        assertProtocolError(() -> Frame.decode(frame(Frame.Type.DATA, 0, 0, new byte[0])));
+        assertProtocolError(() -> Frame.decode(frame(Frame.Type.DATA, -1, 3, new byte[0])));
+        assertProtocolError(() -> Frame.decode(frame(Frame.Type.DATA, 3, 3, new byte[0])));
+        // count из заголовка задаёт размер массива у получателя
+        assertProtocolError(() -> Frame.decode(frame(Frame.Type.DATA, 0, Integer.MAX_VALUE, new byte[0])));
+        assertProtocolError(() -> Frame.decode(frame(Frame.Type.DATA, 0, Frame.MAX_COUNT + 1, new byte[0])));
+
+        assertEquals(Frame.MAX_COUNT, Frame.decode(frame(Frame.Type.DATA, 0, Frame.MAX_COUNT, new byte[0])).getCount());
+    }
+
+    public void testMaxCountCoversLargestResponse() {
+        assertTrue((long) Frame.MAX_COUNT * Frame.MAX_PAYLOAD >= StreamFraming.MAX_RESPONSE_SIZE);
+        assertTrue((long) (Frame.MAX_COUNT - 1) * Frame.MAX_PAYLOAD < StreamFraming.MAX_RESPONSE_SIZE);
+    }
+
+    public void testNackRoundTrip() throws Exception {
+        int[] missing = {0, 5, 17};
+        Frame nack = Frame.decode(Frame.encodeNack(3L, missing));
+        assertEquals(Frame.Type.NACK, nack.getType());
+        assertEquals(3L, nack.getRequestId());
+        assertTrue(Arrays.equals(missing, nack.getNackIndices()));
+
+        assertEquals(0, Frame.decode(Frame.encodeNack(3L, new int[0])).getNackIndices().length);
+    }
+
+    public void testMalformedNackIsRejected() throws Exception {
+        Frame empty = Frame.decode(frame(Frame.Type.NACK, 0, 1, new byte[2]));
+        assertProtocolError(empty::getNackIndices);
+
+        byte[] negative = ByteBuffer.allocate(4).putInt(-1).array();
+        Frame negativeLength = Frame.decode(frame(Frame.Type.NACK, 0, 1, negative));
+        assertProtocolError(negativeLength::getNackIndices);
+
+        // Объявлено больше индексов, чем помещается в теле
+        byte[] overflow = ByteBuffer.allocate(12).putInt(3).putInt(0).putInt(1).array();
+        Frame overflowLength = Frame.decode(frame(Frame.Type.NACK, 0, 1, overflow));
+        assertProtocolError(overflowLength::getNackIndices);
+
+        byte[] huge = ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).array();
+        Frame hugeLength = Frame.decode(frame(Frame.Type.NACK, 0, 1, huge));
+        assertProtocolError(hugeLength::getNackIndices);
+    }
+
+    public void testBusy() throws Exception {
+        Frame busy = Frame.decode(Frame.encodeBusy(4L, 250));
+        assertEquals(Frame.Type.BUSY, busy.getType());
+        assertEquals(250, busy.getRetryAfterMillis());
+
+        assertEquals(0, Frame.decode(Frame.encodeBusy(4L, -10)).getRetryAfterMillis());
+
+        Frame truncated = Frame.decode(frame(Frame.Type.BUSY, 0, 1, new byte[3]));
+        assertProtocolError(truncated::getRetryAfterMillis);
+    }
+
+    public void testAck() throws Exception {
+        Frame ack = Frame.decode(Frame.encodeAck(Long.MIN_VALUE));
+        assertEquals(Frame.Type.ACK, ack.getType());
+        assertEquals(Long.MIN_VALUE, ack.getRequestId());
+        assertEquals(0, ack.getPayload().remaining());
+    }
+}
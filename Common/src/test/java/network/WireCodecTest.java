@@ -0,0 +1,319 @@
+package network;
+
+import data.ChangeEvent;
+import data.CollectionDelta;
+import data.CommandWrapper;
+import data.Coordinates;
+import data.MusicBand;
+import data.MusicGenre;
+import data.Response;
+import data.Studio;
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import static network.WireReaderTest.assertProtocolError;
+
+public class WireCodecTest extends TestCase {
+
+    private static MusicBand band(long id, String name) {
+        MusicBand band = new MusicBand(name, new Coordinates(-12.75, -300), 4, "Описание " + name,
+                MusicGenre.POST_ROCK, new Studio("Studio " + name), 7);
+        band.setId(id);
+        band.setCreationDate(ZonedDateTime.of(2024, 2, 29, 23, 59, 58, 123_456_789, ZoneId.of("Europe/Moscow")));
+        return band;
+    }
+
+    private static void assertBandEquals(MusicBand expected, MusicBand actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.getOwnerId(), actual.getOwnerId());
+        assertEquals(expected.getCreationDate().getZone(), actual.getCreationDate().getZone());
+    }
+
+    private static CommandWrapper roundTrip(CommandWrapper wrapper) throws Exception {
+        return WireCodec.decodeRequest(ByteBuffer.wrap(WireCodec.encodeRequest(wrapper)));
+    }
+
+    private static Response roundTrip(Response response) throws Exception {
+        return WireCodec.decodeResponse(ByteBuffer.wrap(WireCodec.encodeResponse(response)));
+    }
+
+    public void testRequestWithAllFields() throws Exception {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName("insert");
+        wrapper.setKey(-42L);
+        wrapper.setMusicBand(band(Long.MAX_VALUE, "Ветер"));
+        wrapper.setArgument("аргумент");
+        wrapper.setLogin("user");
+        wrapper.setPasswordHash("hash");
+        wrapper.setSessionToken("token");
+        wrapper.setPageSize(50);
+        wrapper.setCursor("cursor");
+
+        CommandWrapper decoded = roundTrip(wrapper);
+        assertEquals("insert", decoded.getCommandName());
+        assertEquals(Long.valueOf(-42), decoded.getKey());
+        assertBandEquals(wrapper.getMusicBand(), decoded.getMusicBand());
+        assertEquals("аргумент", decoded.getArgument());
+        assertEquals("user", decoded.getLogin());
+        assertEquals("hash", decoded.getPasswordHash());
+        assertEquals("token", decoded.getSessionToken());
+        assertEquals(Integer.valueOf(50), decoded.getPageSize());
+        assertEquals("cursor", decoded.getCursor());
+        assertNull(decoded.getBatch());
+    }
+
+    public void testRequestWithOnlyCommandName() throws Exception {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName("show");
+
+        CommandWrapper decoded = roundTrip(wrapper);
+        assertEquals("show", decoded.getCommandName());
+        assertNull(decoded.getKey());
+        assertNull(decoded.getMusicBand());
+        assertNull(decoded.getArgument());
+        assertNull(decoded.getLogin());
+        assertNull(decoded.getPasswordHash());
+        assertNull(decoded.getSessionToken());
+        assertNull(decoded.getPageSize());
+        assertNull(decoded.getCursor());
+        assertNull(decoded.getBatch());
+    }
+
+    public void testBandWithoutIdAndStudio() throws Exception {
+        MusicBand band = new MusicBand();
+        band.setName("Без студии");
+        band.setCoordinates(new Coordinates(1.0, 2));
+        band.setNumberOfParticipants(1);
+        band.setDescription("d");
+        band.setGenre(MusicGenre.JAZZ);
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName("update");
+        wrapper.setMusicBand(band);
+
+        MusicBand decoded = roundTrip(wrapper).getMusicBand();
+        assertNull(decoded.getId());
+        assertNull(decoded.getStudio());
+        assertBandEquals(band, decoded);
+    }
+
+    public void testArgumentTypes() throws Exception {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName("sync");
+
+        wrapper.setArgument(Long.MIN_VALUE);
+        assertEquals(Long.MIN_VALUE, roundTrip(wrapper).getArgument());
+
+        // Integer передаётся как Long
+        wrapper.setArgument(7);
+        assertEquals(7L, roundTrip(wrapper).getArgument());
+
+        wrapper.setArgument("");
+        assertEquals("", roundTrip(wrapper).getArgument());
+    }
+
+    public void testUnsupportedArgumentTypeIsRejectedOnEncode() {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName("show");
+        wrapper.setArgument(1.5);
+        try {
+            WireCodec.encodeRequest(wrapper);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            // ожидаемо
+        }
+    }
+
+    public void testBatchRoundTrip() throws Exception {
+        CommandWrapper first = new CommandWrapper();
+        first.setCommandName("remove_key");
+        first.setKey(1L);
+        CommandWrapper second = new CommandWrapper();
+        second.setCommandName("insert");
+        second.setKey(2L);
+        second.setMusicBand(band(2, "Второй"));
+        CommandWrapper batch = CommandWrapper.batch(Arrays.asList(first, second));
+        batch.setSessionToken("token");
+
+        CommandWrapper decoded = roundTrip(batch);
+        assertEquals(CommandWrapper.BATCH_COMMAND, decoded.getCommandName());
+        assertEquals("token", decoded.getSessionToken());
+        assertEquals(2, decoded.getBatch().size());
+        assertEquals("remove_key", decoded.getBatch().get(0).getCommandName());
+        assertEquals(Long.valueOf(1), decoded.getBatch().get(0).getKey());
+        assertBandEquals(second.getMusicBand(), decoded.getBatch().get(1).getMusicBand());
+    }
+
+    public void testNestedBatchIsRejected() {
+        CommandWrapper inner = CommandWrapper.batch(Collections.singletonList(new CommandWrapper()));
+        inner.getBatch().get(0).setCommandName("show");
+        byte[] data = WireCodec.encodeRequest(CommandWrapper.batch(Collections.singletonList(inner)));
+        assertProtocolError(() -> WireCodec.decodeRequest(ByteBuffer.wrap(data)));
+    }
+
+    public void testBatchSizeIsLimited() throws Exception {
+        CommandWrapper show = new CommandWrapper();
+        show.setCommandName("show");
+        List<CommandWrapper> commands = Collections.nCopies(CommandWrapper.MAX_BATCH_SIZE, show);
+        assertEquals(CommandWrapper.MAX_BATCH_SIZE, roundTrip(CommandWrapper.batch(commands)).getBatch().size());
+
+        List<CommandWrapper> tooMany = Collections.nCopies(CommandWrapper.MAX_BATCH_SIZE + 1, show);
+        byte[] data = WireCodec.encodeRequest(CommandWrapper.batch(tooMany));
+        assertProtocolError(() -> WireCodec.decodeRequest(ByteBuffer.wrap(data)));
+    }
+
+    public void testTextResponses() throws Exception {
+        Response text = roundTrip(new Response("Готово"));
+        assertEquals("Готово", text.getText());
+        assertNull(text.getSessionToken());
+        assertNull(text.getNextCursor());
+        assertFalse(text.isBatch());
+        assertFalse(text.isSync());
+
+        Response session = roundTrip(Response.withSession("Login successful", "token"));
+        assertEquals("Login successful", session.getText());
+        assertEquals("token", session.getSessionToken());
+
+        Response page = roundTrip(Response.page("страница", "next"));
+        assertEquals("страница", page.getText());
+        assertEquals("next", page.getNextCursor());
+    }
+
+    public void testBatchResponse() throws Exception {
+        List<String> results = Arrays.asList("ok", "", "ошибка");
+        Response decoded = roundTrip(Response.batch(results));
+        assertTrue(decoded.isBatch());
+        assertEquals(results, decoded.getResults());
+    }
+
+    public void testSyncResponse() throws Exception {
+        TreeMap<Long, MusicBand> changed = new TreeMap<>();
+        changed.put(-5L, band(1, "Первый"));
+        changed.put(10L, band(2, "Второй"));
+        ZonedDateTime initialized = ZonedDateTime.of(2025, 1, 1, 0, 0, 0, 1, ZoneId.of("UTC"));
+        CollectionDelta delta = new CollectionDelta(Long.MIN_VALUE, 123_456_789_012L, true, initialized,
+                changed, Arrays.asList(3L, -4L));
+
+        Response decoded = roundTrip(Response.sync(delta));
+        assertTrue(decoded.isSync());
+        CollectionDelta result = decoded.getDelta();
+        assertEquals(Long.MIN_VALUE, result.getEpoch());
+        assertEquals(123_456_789_012L, result.getVersion());
+        assertTrue(result.isFull());
+        assertEquals(initialized, result.getInitializationDate());
+        assertEquals(changed.keySet(), result.getChanged().keySet());
+        for (Long key : changed.keySet()) {
+            assertBandEquals(changed.get(key), result.getChanged().get(key));
+        }
+        assertEquals(Arrays.asList(3L, -4L), result.getRemoved());
+    }
+
+    public void testEventsRoundTrip() throws Exception {
+        List<ChangeEvent> events = Arrays.asList(
+                new ChangeEvent(1, ChangeEvent.Operation.INSERT, 1),
+                new ChangeEvent(-2, ChangeEvent.Operation.UPDATE, Long.MAX_VALUE),
+                new ChangeEvent(3, ChangeEvent.Operation.REMOVE, 0));
+        List<ChangeEvent> decoded = WireCodec.decodeEvents(ByteBuffer.wrap(WireCodec.encodeEvents(events)));
+        assertEquals(events.size(), decoded.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(events.get(i).getKey(), decoded.get(i).getKey());
+            assertEquals(events.get(i).getOperation(), decoded.get(i).getOperation());
+            assertEquals(events.get(i).getVersion(), decoded.get(i).getVersion());
+        }
+    }
+
+    public void testEveryTruncatedRequestIsRejected() {
+        CommandWrapper wrapper = new CommandWrapper();
+        wrapper.setCommandName("insert");
+        wrapper.setKey(1L);
+        wrapper.setMusicBand(band(1, "Обрыв"));
+        wrapper.setArgument(5L);
+        wrapper.setSessionToken("token");
+        byte[] data = WireCodec.encodeRequest(wrapper);
+        for (int length = 0; length < data.length; length++) {
+            ByteBuffer prefix = ByteBuffer.wrap(data, 0, length);
+            assertProtocolError(() -> WireCodec.decodeRequest(prefix));
+        }
+    }
+
+    public void testEveryTruncatedSyncResponseIsRejected() {
+        TreeMap<Long, MusicBand> changed = new TreeMap<>();
+        changed.put(1L, band(1, "Обрыв"));
+        byte[] data = WireCodec.encodeResponse(Response.sync(new CollectionDelta(1, 2, false,
+                ZonedDateTime.now(), changed, Collections.singletonList(9L))));
+        for (int length = 0; length < data.length; length++) {
+            ByteBuffer prefix = ByteBuffer.wrap(data, 0, length);
+            assertProtocolError(() -> WireCodec.decodeResponse(prefix));
+        }
+    }
+
+    public void testOversizedCountsAreRejected() {
+        byte[] batch = new WireWriter()
+                .writeByte(WireCodec.VERSION)
+                .writeByte(1) // RESPONSE_BATCH
+                .writeVarInt(Integer.MAX_VALUE)
+                .toByteArray();
+        assertProtocolError(() -> WireCodec.decodeResponse(ByteBuffer.wrap(batch)));
+
+        byte[] events = new WireWriter().writeByte(WireCodec.VERSION).writeVarInt(1_000_000).toByteArray();
+        assertProtocolError(() -> WireCodec.decodeEvents(ByteBuffer.wrap(events)));
+    }
+
+    public void testUnknownVersionAndTypesAreRejected() {
+        byte[] version = new WireWriter().writeByte(WireCodec.VERSION + 1).writeByte(0).toByteArray();
+        assertProtocolError(() -> WireCodec.decodeResponse(ByteBuffer.wrap(version)));
+
+        byte[] type = new WireWriter().writeByte(WireCodec.VERSION).writeByte(99).toByteArray();
+        assertProtocolError(() -> WireCodec.decodeResponse(ByteBuffer.wrap(type)));
+
+        byte[] operation = new WireWriter().writeByte(WireCodec.VERSION).writeVarInt(1)
+                .writeSignedLong(1).writeByte(42).writeVarLong(1).toByteArray();
+        assertProtocolError(() -> WireCodec.decodeEvents(ByteBuffer.wrap(operation)));
+
+        WireWriter argument = new WireWriter().writeByte(WireCodec.VERSION)
+                .writeString("show")
+                .writeBoolean(false)  // key
+                .writeBoolean(false)  // musicBand
+                .writeByte(9);        // неизвестный тип аргумента
+        assertProtocolError(() -> WireCodec.decodeRequest(ByteBuffer.wrap(argument.toByteArray())));
+    }
+
+    public void testInvalidBandFieldsAreRejected() {
+        // Число участников 0 не проходит проверку MusicBand
+        WireWriter zeroParticipants = bandPrefix().writeSignedInt(0);
+        finishBand(zeroParticipants, MusicGenre.ROCK.ordinal());
+        assertProtocolError(() -> WireCodec.readMusicBand(new WireReader(zeroParticipants.toByteArray())));
+
+        WireWriter unknownGenre = bandPrefix().writeSignedInt(3);
+        finishBand(unknownGenre, MusicGenre.values().length);
+        assertProtocolError(() -> WireCodec.readMusicBand(new WireReader(unknownGenre.toByteArray())));
+
+        WireWriter badZone = new WireWriter()
+                .writeBoolean(false)
+                .writeString("name")
+                .writeDouble(0).writeSignedInt(0)
+                .writeSignedLong(0).writeVarInt(0).writeString("Not/AZone");
+        assertProtocolError(() -> WireCodec.readMusicBand(new WireReader(badZone.toByteArray())));
+    }
+
+    private static WireWriter bandPrefix() {
+        return new WireWriter()
+                .writeBoolean(false)                  // id
+                .writeString("name")
+                .writeDouble(1.0).writeSignedInt(1)   // coordinates
+                .writeSignedLong(0).writeVarInt(0).writeString("UTC");
+    }
+
+    private static void finishBand(WireWriter writer, int genre) {
+        writer.writeString("description")
+                .writeByte(genre)
+                .writeString(null)
+                .writeSignedInt(1);
+    }
+}
@@ -0,0 +1,123 @@
+package network;
+
+import junit.framework.TestCase;
+
+import java.net.ProtocolException;
+import java.util.Arrays;
+
+public class WireReaderTest extends TestCase {
+
+    public void testVarIntRoundTrip() throws Exception {
+        int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        WireWriter writer = new WireWriter();
+        for (int value : values) {
+            writer.writeVarInt(value);
+        }
+        WireReader reader = new WireReader(writer.toByteArray());
+        for (int value : values) {
+            assertEquals(value, reader.readVarInt());
+        }
+        assertFalse(reader.hasRemaining());
+    }
+
+    public void testVarIntLength() {
+        assertEquals(1, new WireWriter().writeVarInt(127).size());
+        assertEquals(2, new WireWriter().writeVarInt(128).size());
+        assertEquals(5, new WireWriter().writeVarInt(-1).size());
+        assertEquals(10, new WireWriter().writeVarLong(-1L).size());
+    }
+
+    public void testVarLongRoundTrip() throws Exception {
+        long[] values = {0, 1, 127, 128, Integer.MAX_VALUE + 1L, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        WireWriter writer = new WireWriter();
+        for (long value : values) {
+            writer.writeVarLong(value);
+        }
+        WireReader reader = new WireReader(writer.toByteArray());
+        for (long value : values) {
+            assertEquals(value, reader.readVarLong());
+        }
+    }
+
+    public void testZigZagKeepsSmallNegativesShort() throws Exception {
+        assertEquals(1, new WireWriter().writeSignedInt(-1).size());
+        assertEquals(1, new WireWriter().writeSignedLong(-64).size());
+
+        int[] ints = {0, -1, 1, -64, 64, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        long[] longs = {0, -1, 1, Long.MIN_VALUE, Long.MAX_VALUE};
+        WireWriter writer = new WireWriter();
+        for (int value : ints) {
+            writer.writeSignedInt(value);
+        }
+        for (long value : longs) {
+            writer.writeSignedLong(value);
+        }
+        WireReader reader = new WireReader(writer.toByteArray());
+        for (int value : ints) {
+            assertEquals(value, reader.readSignedInt());
+        }
+        for (long value : longs) {
+            assertEquals(value, reader.readSignedLong());
+        }
+    }
+
+    public void testDoubleAndBoolean() throws Exception {
+        WireWriter writer = new WireWriter(1);
+        writer.writeDouble(-0.5).writeDouble(Double.NaN).writeBoolean(true).writeBoolean(false);
+        WireReader reader = new WireReader(writer.toByteArray());
+        assertEquals(-0.5, reader.readDouble(), 0.0);
+        assertTrue(Double.isNaN(reader.readDouble()));
+        assertTrue(reader.readBoolean());
+        assertFalse(reader.readBoolean());
+    }
+
+    public void testStringsKeepNullAndEmptyApart() throws Exception {
+        WireWriter writer = new WireWriter();
+        writer.writeString(null).writeString("").writeString("Кириллица и ✓");
+        WireReader reader = new WireReader(writer.toByteArray());
+        assertNull(reader.readString());
+        assertEquals("", reader.readString());
+        assertEquals("Кириллица и ✓", reader.readString());
+    }
+
+    public void testMalformedVarIntIsRejected() {
+        byte[] tooLong = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01};
+        assertProtocolError(() -> new WireReader(tooLong).readVarInt());
+
+        byte[] tooLongLong = new byte[11];
+        Arrays.fill(tooLongLong, (byte) 0xFF);
+        assertProtocolError(() -> new WireReader(tooLongLong).readVarLong());
+    }
+
+    public void testTruncatedInputIsRejected() {
+        assertProtocolError(() -> new WireReader(new byte[0]).readByte());
+        assertProtocolError(() -> new WireReader(new byte[7]).readDouble());
+        // Продолжение varint обрывается
+        assertProtocolError(() -> new WireReader(new byte[]{(byte) 0x80}).readVarInt());
+    }
+
+    public void testOversizedLengthsAreRejected() {
+        byte[] string = new WireWriter().writeVarInt(1000).writeByte('a').toByteArray();
+        assertProtocolError(() -> new WireReader(string).readString());
+
+        byte[] length = new WireWriter().writeVarInt(Integer.MAX_VALUE).toByteArray();
+        assertProtocolError(() -> new WireReader(length).readLength());
+
+        byte[] negative = new WireWriter().writeVarInt(-5).toByteArray();
+        assertProtocolError(() -> new WireReader(negative).readLength());
+        assertProtocolError(() -> new WireReader(negative).readString());
+    }
+
+    interface Read {
+        void run() throws ProtocolException;
+    }
+
+    static void assertProtocolError(Read read) {
+        try {
+            read.run();
+            fail("ProtocolException expected");
+        } catch (ProtocolException expected) {
+            // ожидаемо
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package utils;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class LatencyHistogramTest extends TestCase {
+    private static final long MAX_VALUE = (2048L << 32) - 1;
+
+    /**
+     * Верхняя граница корзины значения: второе, большее значение не даёт
+     * перцентилю упереться в max.
+     */
+    private static long bucketBound(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(MAX_VALUE);
+        return histogram.percentile(50);
+    }
+
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    public void testValuesBelowLinearLimitAreExact() {
+        for (long value = 0; value < 2048; value++) {
+            assertEquals(value, bucketBound(value));
+        }
+    }
+
+    public void testRelativeErrorAboveLinearLimit() {
+        Random random = new Random(1);
+        for (int i = 0; i < 3000; i++) {
+            long value = i < 1000
+                    ? 2048 + i                                   // сразу за линейной частью
+                    : 2048 + (long) (Math.pow(2, random.nextDouble() * 42));
+            value = Math.min(value, MAX_VALUE);
+            long bound = bucketBound(value);
+            assertTrue("bound " + bound + " below " + value, bound >= value);
+            assertTrue("bound " + bound + " too far from " + value, bound - value <= value / 1000);
+        }
+    }
+
+    public void testBucketEdgesAroundPowersOfTwo() {
+        for (int exponent = 11; exponent < 43; exponent++) {
+            long power = 1L << exponent;
+            // Степень двойки — начало корзины, предыдущее значение — конец предыдущей
+            assertEquals(power - 1, bucketBound(power - 1));
+            long bound = bucketBound(power);
+            assertTrue(bound >= power && bound - power <= power / 1000);
+        }
+    }
+
+    public void testValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(MAX_VALUE, histogram.max());
+        assertEquals(MAX_VALUE, histogram.percentile(100));
+
+        histogram.record(-5);
+        assertEquals(2, histogram.count());
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(MAX_VALUE, bucketBound(MAX_VALUE));
+    }
+
+    public void testPercentilesOfUniformDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1, histogram.percentile(0));
+        assertEquals(500, histogram.percentile(50));
+        assertEquals(900, histogram.percentile(90));
+        assertEquals(999, histogram.percentile(99.9));
+        assertEquals(1000, histogram.percentile(100));
+    }
+
+    public void testPercentilesOfWideDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // Перемешанные значения 1..100000
+        Random random = new Random(7);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+        }
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+        for (long value : values) {
+            histogram.record(value);
+        }
+        assertPercentile(histogram, 50, 50_000);
+        assertPercentile(histogram, 90, 90_000);
+        assertPercentile(histogram, 99, 99_000);
+        assertPercentile(histogram, 99.99, 99_990);
+        assertEquals(100_000, histogram.percentile(100));
+        assertEquals(100_000, histogram.max());
+    }
+
+    public void testBimodalDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1_000_000);
+        }
+        assertEquals(100, histogram.percentile(50));
+        assertEquals(100, histogram.percentile(99));
+        assertPercentile(histogram, 99.9, 1_000_000);
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i % 3000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80_000, histogram.count());
+        assertEquals(2999, histogram.max());
+    }
+
+    private static void assertPercentile(LatencyHistogram histogram, double percentile, long expected) {
+        long actual = histogram.percentile(percentile);
+        assertTrue("p" + percentile + " = " + actual + ", expected ~" + expected,
+                actual >= expected && actual - expected <= expected / 1000);
+    }
+}
@@ -0,0 +1,198 @@
+package org.example;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Кольцевой буфер строк журнала и поток, который их печатает. Рабочие потоки
+ * только занимают ячейку (один CAS) и кладут в неё шаблон с аргументами;
+ * форматирование и вывод в консоль — в потоке записи, поэтому блокировка
+ * PrintStream никого, кроме него, не задерживает. Если буфер полон, строка
+ * отбрасывается, а поток записи потом сообщает, сколько строк пропало.
+ */
+final class AsyncAppender {
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneOffset.UTC);
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Entry[] entries;
+    // Номер записи, для которой ячейка свободна (i) или заполнена (i + 1), — алгоритм Вьюкова
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // только поток записи
+    private final LongAdder dropped = new LongAdder();
+    private long droppedReported; // только поток записи
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Thread writer;
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity число ячеек, округляется вверх до степени двойки
+     */
+    AsyncAppender(int capacity, PrintStream out, PrintStream err) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.entries = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.out = out;
+        this.err = err;
+        this.writer = new Thread(this::writeLoop, "log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return false, если буфер полон и строка отброшена
+     */
+    boolean append(Log.Level level, String template, Object[] args) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.increment();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        Entry entry = entries[(int) (position & mask)];
+        entry.timestamp = System.currentTimeMillis();
+        entry.level = level;
+        entry.thread = Thread.currentThread().getName();
+        entry.template = template;
+        entry.args = args;
+        sequences.set((int) (position & mask), position + 1);
+        if (sleeping) {
+            sleeping = false;
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Дописывает всё, что уже в буфере, и останавливает поток записи.
+     */
+    void close(long timeoutMillis) {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            int written = drain(line);
+            reportDropped(line);
+            if (written > 0) {
+                continue;
+            }
+            out.flush();
+            err.flush();
+            if (!running) {
+                drain(line);
+                out.flush();
+                err.flush();
+                return;
+            }
+            sleeping = true;
+            // Повторная проверка после флага: иначе можно уснуть, пропустив только что добавленную строку
+            if (isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+    }
+
+    private boolean isEmpty() {
+        return sequences.get((int) (head & mask)) != head + 1;
+    }
+
+    private int drain(StringBuilder line) {
+        int written = 0;
+        while (written < MAX_BATCH && !isEmpty()) {
+            int index = (int) (head & mask);
+            Entry entry = entries[index];
+            line.setLength(0);
+            TIMESTAMP.formatTo(Instant.ofEpochMilli(entry.timestamp), line);
+            line.append(' ').append(entry.level.label).append(" [").append(entry.thread).append("] ");
+            format(line, entry.template, entry.args);
+            (entry.level.compareTo(Log.Level.WARN) >= 0 ? err : out).println(line);
+
+            entry.template = null;
+            entry.args = null;
+            entry.thread = null;
+            sequences.set(index, head + entries.length);
+            head++;
+            written++;
+        }
+        return written;
+    }
+
+    private void reportDropped(StringBuilder line) {
+        long total = dropped.sum();
+        if (total == droppedReported) {
+            return;
+        }
+        line.setLength(0);
+        TIMESTAMP.formatTo(Instant.now(), line);
+        line.append(' ').append(Log.Level.WARN.label).append(" [log-writer] Log buffer overflow: dropped ")
+                .append(total - droppedReported).append(" lines");
+        err.println(line);
+        droppedReported = total;
+    }
+
+    /**
+     * Подставляет аргументы на место {} по порядку; лишние аргументы дописываются в конец.
+     */
+    static void format(StringBuilder line, String template, Object[] args) {
+        int argument = 0;
+        int from = 0;
+        int placeholder;
+        while (args != null && argument < args.length && (placeholder = template.indexOf("{}", from)) >= 0) {
+            line.append(template, from, placeholder).append(args[argument++]);
+            from = placeholder + 2;
+        }
+        line.append(template, from, template.length());
+        while (args != null && argument < args.length) {
+            line.append(' ').append(args[argument++]);
+        }
+    }
+
+    private static final class Entry {
+        private long timestamp;
+        private Log.Level level;
+        private String thread;
+        private String template;
+        private Object[] args;
+    }
+}
@@ -0,0 +1,76 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул direct-буферов одного размера для приёма и отправки датаграмм.
+ * Буфер выдаётся как {@link Lease} со счётчиком ссылок: каждый, кто хранит
+ * буфер (очередь отправки, хранилище неподтверждённых ответов, обработчик
+ * запроса), берёт ссылку через {@link Lease#retain()} и отдаёт через
+ * {@link Lease#release()}. Последний release возвращает буфер в пул.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<Lease> free;
+
+    /**
+     * @param maxPooled сколько свободных буферов хранить; сверх этого буферы
+     *                  выделяются по требованию и после освобождения достаются GC
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Выдаёт очищенный буфер с одной ссылкой у вызывающего.
+     */
+    public Lease acquire() {
+        Lease lease = free.poll();
+        if (lease == null) {
+            lease = new Lease(ByteBuffer.allocateDirect(bufferSize));
+        }
+        lease.references.set(1);
+        return lease;
+    }
+
+    public int pooled() {
+        return free.size();
+    }
+
+    public final class Lease {
+        private final ByteBuffer buffer;
+        private final AtomicInteger references = new AtomicInteger();
+
+        private Lease(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        public Lease retain() {
+            if (references.getAndIncrement() <= 0) {
+                throw new IllegalStateException("Buffer lease is already released");
+            }
+            return this;
+        }
+
+        public void release() {
+            int remaining = references.decrementAndGet();
+            if (remaining == 0) {
+                buffer.clear();
+                free.offer(this);
+            } else if (remaining < 0) {
+                throw new IllegalStateException("Buffer lease is released twice");
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example;
+
+import commands.CollectionListener;
+import data.ChangeEvent;
+import network.Frame;
+import network.WireCodec;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Рассылает изменения коллекции клиентам, подписавшимся командой watch.
+ * События копятся в очереди и раз в несколько десятков миллисекунд уходят
+ * пачками в EVENT-кадрах, так что массовое удаление не порождает лавину датаграмм.
+ * Подписка живёт TTL и продлевается повторным watch.
+ */
+public class ChangeBroadcaster implements CollectionListener {
+    // Событие занимает не больше ~21 байта, пачка гарантированно влезает в один кадр
+    private static final int EVENTS_PER_FRAME = 2500;
+
+    private final long ttlMillis;
+    private final Queue<ChangeEvent> queue = new ConcurrentLinkedQueue<>();
+    private final Map<SocketAddress, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    public ChangeBroadcaster(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public void onChange(ChangeEvent event) {
+        if (!subscriptions.isEmpty()) {
+            queue.add(event);
+        }
+    }
+
+    /**
+     * Подписывает адрес или продлевает подписку.
+     */
+    public void subscribe(UdpEventLoop loop, SocketAddress client) {
+        subscriptions.put(client, new Subscription(loop, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public int size() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Отправляет накопленные события всем живым подписчикам.
+     */
+    public void flush() {
+        long now = System.currentTimeMillis();
+        subscriptions.values().removeIf(subscription -> subscription.expiresAt < now);
+
+        List<ChangeEvent> batch = new ArrayList<>();
+        ChangeEvent event;
+        while ((event = queue.poll()) != null) {
+            batch.add(event);
+            if (batch.size() == EVENTS_PER_FRAME) {
+                send(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private void send(List<ChangeEvent> events) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        long lastVersion = events.get(events.size() - 1).getVersion();
+        ByteBuffer frame = Frame.encode(Frame.Type.EVENT, lastVersion, WireCodec.encodeEvents(events));
+        for (Map.Entry<SocketAddress, Subscription> entry : subscriptions.entrySet()) {
+            entry.getValue().loop.send(frame.duplicate(), entry.getKey());
+        }
+    }
+
+    private static final class Subscription {
+        private final UdpEventLoop loop;
+        private final long expiresAt;
+
+        private Subscription(UdpEventLoop loop, long expiresAt) {
+            this.loop = loop;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
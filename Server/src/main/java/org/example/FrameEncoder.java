@@ -0,0 +1,161 @@
+package org.example;
+
+import data.Response;
+import network.Compression;
+import network.Frame;
+import network.WireCodec;
+import network.WireWriter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Кодирует ответ прямо в кадры DATA из пулов. Ответ пишется через небольшой
+ * буфер кодировщика: короткий целиком остаётся в нём и уходит одним кадром
+ * подходящего размера, длинный по мере заполнения буфера сбрасывается
+ * (при необходимости через Deflate) сразу в тела кадров. Заголовки дописываются
+ * в конце, когда известно число фрагментов.
+ * <p>
+ * Кодировщик однопоточный; его буферы и Deflater переиспользуются между ответами.
+ */
+final class FrameEncoder {
+    // Больше порога сжатия: о сжатии короткого ответа решаем по его точному размеру
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final BufferPool smallFrames;
+    private final BufferPool largeFrames;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] compressed = new byte[BUFFER_SIZE];
+    private final WireWriter writer = new WireWriter(buffer, this::drain);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final List<BufferPool.Lease> frames = new ArrayList<>();
+    private boolean acceptsDeflate;
+    private boolean streaming;
+    private boolean deflating;
+
+    FrameEncoder(BufferPool smallFrames, BufferPool largeFrames) {
+        this.smallFrames = smallFrames;
+        this.largeFrames = largeFrames;
+    }
+
+    /**
+     * Вызывающий владеет возвращёнными арендами и должен их освободить.
+     */
+    BufferPool.Lease[] encode(long requestId, boolean acceptsDeflate, Response response) {
+        this.acceptsDeflate = acceptsDeflate;
+        streaming = false;
+        deflating = false;
+        writer.reset();
+        try {
+            WireCodec.encodeResponse(response, writer);
+            byte flags = streaming ? finishStream() : writeBuffered();
+
+            int count = frames.size();
+            BufferPool.Lease[] result = new BufferPool.Lease[count];
+            for (int i = 0; i < count; i++) {
+                ByteBuffer frame = frames.get(i).buffer();
+                int end = frame.position();
+                frame.position(0);
+                Frame.writeHeader(frame, Frame.Type.DATA, flags, requestId, i, count);
+                frame.position(0).limit(end);
+                result[i] = frames.get(i);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            frames.forEach(BufferPool.Lease::release);
+            throw e;
+        } finally {
+            frames.clear();
+        }
+    }
+
+    /**
+     * Весь ответ поместился в буфер кодировщика — он уходит одним кадром.
+     */
+    private byte writeBuffered() {
+        byte[] data = buffer;
+        int length = writer.buffered();
+        byte flags = 0;
+        if (acceptsDeflate && Compression.shouldCompress(length)) {
+            deflater.reset();
+            deflater.setInput(buffer, 0, length);
+            deflater.finish();
+            int size = 0;
+            while (!deflater.finished() && size < compressed.length) {
+                size += deflater.deflate(compressed, size, compressed.length - size);
+            }
+            // Не поместилось в буфер размером с исходный ответ — сжатие не помогло
+            if (deflater.finished() && size < length) {
+                data = compressed;
+                length = size;
+                flags = Frame.FLAG_DEFLATED;
+            }
+        }
+        BufferPool pool = Frame.HEADER_SIZE + length <= smallFrames.getBufferSize() ? smallFrames : largeFrames;
+        nextFrame(pool).put(data, 0, length);
+        return flags;
+    }
+
+    private byte finishStream() {
+        writer.flush();
+        if (!deflating) {
+            return 0;
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflater.deflate(currentFrame());
+        }
+        return Frame.FLAG_DEFLATED;
+    }
+
+    /**
+     * Приёмник writer: буфер кодировщика заполнен, ответ заведомо длиннее порога сжатия.
+     */
+    private void drain(byte[] data, int offset, int length) {
+        if (!streaming) {
+            streaming = true;
+            deflating = acceptsDeflate;
+            if (deflating) {
+                deflater.reset();
+            }
+        }
+        if (deflating) {
+            // Deflater держит ссылку на вход — забираем его целиком, пока массив не переписан
+            deflater.setInput(data, offset, length);
+            while (!deflater.needsInput()) {
+                deflater.deflate(currentFrame());
+            }
+            return;
+        }
+        while (length > 0) {
+            ByteBuffer frame = currentFrame();
+            int chunk = Math.min(length, frame.remaining());
+            frame.put(data, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private ByteBuffer currentFrame() {
+        if (!frames.isEmpty()) {
+            ByteBuffer last = frames.get(frames.size() - 1).buffer();
+            if (last.hasRemaining()) {
+                return last;
+            }
+        }
+        return nextFrame(largeFrames);
+    }
+
+    /**
+     * Новый кадр; тело пишется после места под заголовок.
+     */
+    private ByteBuffer nextFrame(BufferPool pool) {
+        BufferPool.Lease lease = pool.acquire();
+        frames.add(lease);
+        ByteBuffer frame = lease.buffer();
+        frame.position(Frame.HEADER_SIZE);
+        return frame;
+    }
+}
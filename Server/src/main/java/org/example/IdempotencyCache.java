@@ -0,0 +1,142 @@
+package org.example;
+
+import data.Response;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Недавние ответы на изменяющие команды, ключ — (id пользователя, id запроса).
+ * Повтор запроса клиентом получает сохранённый ответ и не выполняется заново.
+ * Размер ограничен (вытесняются самые старые записи), записи живут не дольше TTL.
+ * Записи заводятся только для проверенных пользователей, поэтому анонимные запросы
+ * не могут вытеснить чужие ответы.
+ */
+public class IdempotencyCache {
+
+    public enum Status { NEW, IN_PROGRESS, DONE }
+
+    /**
+     * Итог {@link #begin}: для DONE вместе с сохранённым ответом.
+     */
+    public static final class Claim {
+        private final Status status;
+        private final Response response;
+
+        private Claim(Status status, Response response) {
+            this.status = status;
+            this.response = response;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Response getResponse() {
+            return response;
+        }
+    }
+
+    private static final Claim NEW = new Claim(Status.NEW, null);
+    private static final Claim IN_PROGRESS = new Claim(Status.IN_PROGRESS, null);
+
+    private final int capacity;
+    private final long ttlMillis;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, false);
+
+    public IdempotencyCache(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Резервирует запрос за вызывающим потоком либо сообщает, что он уже выполняется
+     * или выполнен. Ответ выполненного запроса возвращается в том же вызове,
+     * чтобы его не успела вытеснить очистка.
+     */
+    public synchronized Claim begin(int userId, long requestId) {
+        Key key = new Key(userId, requestId);
+        Entry entry = entries.get(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expiresAt >= now) {
+            return entry.response == null ? IN_PROGRESS : new Claim(Status.DONE, entry.response);
+        }
+        entries.remove(key);
+        entries.put(key, new Entry(now + ttlMillis));
+        evictOverflow();
+        return NEW;
+    }
+
+    public synchronized void complete(int userId, long requestId, Response response) {
+        Entry entry = entries.get(new Key(userId, requestId));
+        if (entry != null) {
+            entry.response = response;
+        }
+    }
+
+    /**
+     * Снимает резерв, если выполнение сорвалось, чтобы повтор выполнился заново.
+     */
+    public synchronized void abandon(int userId, long requestId) {
+        Key key = new Key(userId, requestId);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.response == null) {
+            entries.remove(key);
+        }
+    }
+
+    public synchronized void expire() {
+        long now = System.currentTimeMillis();
+        // Записи лежат в порядке добавления, а TTL у всех одинаковый
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next().expiresAt < now) {
+            iterator.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static final class Entry {
+        private final long expiresAt;
+        private Response response;
+
+        private Entry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Key {
+        private final int userId;
+        private final long requestId;
+
+        private Key(int userId, long requestId) {
+            this.userId = userId;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+            Key o = (Key) other;
+            return requestId == o.requestId && userId == o.userId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, requestId);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Запросы, которые сейчас выполняются, ключ — (адрес клиента, id запроса).
+ * Клиент повторяет запрос, не дождавшись ответа; пока исходный запрос в работе,
+ * повтор отбрасывается, а после отправки ответа его обслуживает {@link PendingResponses}.
+ */
+public class InFlightRequests {
+    private final Map<Key, Long> started = new ConcurrentHashMap<>();
+    private final long maxAgeMillis;
+
+    /**
+     * @param maxAgeMillis через сколько запись считается потерянной, даже если
+     *                     запрос так и не завершился
+     */
+    public InFlightRequests(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return false, если такой запрос уже выполняется
+     */
+    public boolean begin(SocketAddress client, long requestId) {
+        return started.putIfAbsent(new Key(client, requestId), System.currentTimeMillis()) == null;
+    }
+
+    public void finish(SocketAddress client, long requestId) {
+        started.remove(new Key(client, requestId));
+    }
+
+    public void expire() {
+        long oldest = System.currentTimeMillis() - maxAgeMillis;
+        started.values().removeIf(startedAt -> startedAt < oldest);
+    }
+
+    public int size() {
+        return started.size();
+    }
+
+    private static final class Key {
+        private final SocketAddress client;
+        private final long requestId;
+
+        private Key(SocketAddress client, long requestId) {
+            this.client = client;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+            Key o = (Key) other;
+            return requestId == o.requestId && client.equals(o.client);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(client, requestId);
+        }
+    }
+}
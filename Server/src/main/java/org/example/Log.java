@@ -0,0 +1,89 @@
+package org.example;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Журнал сервера. Строки пишутся асинхронно через {@link AsyncAppender}: вызов
+ * не ждёт консоль, а аргументы подставляются в шаблон ({}) уже в потоке записи,
+ * поэтому передавать можно только неизменяемые значения.
+ * <p>
+ * -Dserver.logLevel=DEBUG|INFO|WARN|ERROR — минимальный уровень (INFO);
+ * -Dserver.logRequestSample=N — печатать строку о запросе для одного из N запросов
+ * (1 — для каждого, 0 — ни для одного); -Dserver.logBuffer=N — ёмкость буфера строк.
+ */
+public final class Log {
+
+    public enum Level {
+        DEBUG("DEBUG"), INFO("INFO "), WARN("WARN "), ERROR("ERROR");
+
+        final String label;
+
+        Level(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Level LEVEL = Level.valueOf(System.getProperty("server.logLevel", "INFO").toUpperCase());
+    private static final int REQUEST_SAMPLE = Math.max(0, Integer.getInteger("server.logRequestSample", 1));
+    private static final AsyncAppender APPENDER =
+            new AsyncAppender(Integer.getInteger("server.logBuffer", 16384), System.out, System.err);
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> APPENDER.close(1000), "log-shutdown"));
+    }
+
+    private Log() {
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) >= 0;
+    }
+
+    public static void debug(String template, Object... args) {
+        log(Level.DEBUG, template, args);
+    }
+
+    public static void info(String template, Object... args) {
+        log(Level.INFO, template, args);
+    }
+
+    public static void warn(String template, Object... args) {
+        log(Level.WARN, template, args);
+    }
+
+    public static void error(String template, Object... args) {
+        log(Level.ERROR, template, args);
+    }
+
+    /**
+     * Строка уровня INFO, которая пишется на каждый запрос: печатается с выборкой.
+     */
+    public static void request(String template, Object... args) {
+        if (REQUEST_SAMPLE == 0 || !isEnabled(Level.INFO)) {
+            return;
+        }
+        if (REQUEST_SAMPLE == 1 || ThreadLocalRandom.current().nextInt(REQUEST_SAMPLE) == 0) {
+            APPENDER.append(Level.INFO, template, args);
+        }
+    }
+
+    /**
+     * Сколько строк отброшено из-за переполненного буфера.
+     */
+    public static long dropped() {
+        return APPENDER.dropped();
+    }
+
+    /**
+     * Дописывает буфер; вызывать при остановке сервера.
+     */
+    public static void shutdown() {
+        APPENDER.close(1000);
+    }
+
+    private static void log(Level level, String template, Object[] args) {
+        if (isEnabled(level)) {
+            APPENDER.append(level, template, args);
+        }
+    }
+}
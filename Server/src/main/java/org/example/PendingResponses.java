@@ -0,0 +1,113 @@
+package org.example;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отправленные, но ещё не подтверждённые клиентом ответы. Хранятся до ACK
+ * или до истечения срока, чтобы по NACK можно было переслать потерянные фрагменты.
+ * Хранилище держит по одной ссылке на буфер каждого кадра и освобождает их,
+ * когда ответ подтверждён, заменён или устарел.
+ */
+public class PendingResponses {
+    private static final long RETENTION_MILLIS = 15_000;
+
+    private final Map<Key, Entry> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Принимает ссылки вызывающего на кадры ответа.
+     */
+    public void register(SocketAddress client, long requestId, BufferPool.Lease[] frames) {
+        Entry previous = pending.put(new Key(client, requestId),
+                new Entry(frames, System.currentTimeMillis() + RETENTION_MILLIS));
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    /**
+     * Пересылает указанные фрагменты; пустой список означает «весь ответ».
+     *
+     * @return false, если ответ уже неизвестен серверу
+     */
+    public boolean retransmit(UdpEventLoop loop, SocketAddress client, long requestId, int[] indices) {
+        // Отправка внутри computeIfPresent: запись не освободится, пока цикл не взял свои ссылки
+        Entry entry = pending.computeIfPresent(new Key(client, requestId), (key, current) -> {
+            if (indices.length == 0) {
+                for (BufferPool.Lease frame : current.frames) {
+                    loop.send(frame, client);
+                }
+            } else {
+                for (int index : indices) {
+                    if (index >= 0 && index < current.frames.length) {
+                        loop.send(current.frames[index], client);
+                    }
+                }
+            }
+            return current;
+        });
+        return entry != null;
+    }
+
+    public void acknowledge(SocketAddress client, long requestId) {
+        Entry entry = pending.remove(new Key(client, requestId));
+        if (entry != null) {
+            entry.release();
+        }
+    }
+
+    public void expire() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Key, Entry> mapping : pending.entrySet()) {
+            Entry entry = mapping.getValue();
+            if (entry.expiresAt < now && pending.remove(mapping.getKey(), entry)) {
+                entry.release();
+            }
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    private static final class Entry {
+        private final BufferPool.Lease[] frames;
+        private final long expiresAt;
+
+        private Entry(BufferPool.Lease[] frames, long expiresAt) {
+            this.frames = frames;
+            this.expiresAt = expiresAt;
+        }
+
+        private void release() {
+            for (BufferPool.Lease frame : frames) {
+                frame.release();
+            }
+        }
+    }
+
+    private static final class Key {
+        private final SocketAddress client;
+        private final long requestId;
+
+        private Key(SocketAddress client, long requestId) {
+            this.client = client;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+            Key o = (Key) other;
+            return requestId == o.requestId && client.equals(o.client);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(client, requestId);
+        }
+    }
+}
@@ -5,32 +5,97 @@ import commands.Executor;
 import commands.commandsWithArgument.*;
 import data.CommandWrapper;
 import data.MusicBand;
+import data.Response;
 import data.User;
+import network.Frame;
+import network.WireCodec;
 import utils.DatabaseManager;
+import utils.Metrics;
+import utils.SessionManager;
 
 import java.io.*;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public class ServerMain {
 
     private static final int PORT = 12345;
     private static final int BUFFER_SIZE = 65536;
+    private static final int SMALL_FRAME_SIZE = 2048;
+    private static final int FRAME_ENCODERS_POOLED = 64;
+    private static final int DECODE_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int DECODE_QUEUE_CAPACITY = 4096;
+    private static final int PROCESSING_THREADS = 10;
+    private static final int PROCESSING_QUEUE_CAPACITY = 1024;
+    // Клиент ждёт ответа 5 секунд; запрос, простоявший в очереди дольше, уже никому не нужен
+    private static final long MAX_QUEUE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(4000);
+    private static final int MIN_RETRY_AFTER_MILLIS = 50;
+    private static final int MAX_RETRY_AFTER_MILLIS = 2000;
+    private static final int IDEMPOTENCY_CACHE_CAPACITY = 10000;
+    private static final long IDEMPOTENCY_TTL_MILLIS = 60_000;
+    private static final long SESSION_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    // Подписка watch живёт минуту, клиент продлевает её раньше; события копятся 50 мс
+    private static final long WATCH_TTL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long WATCH_FLUSH_MILLIS = 50;
+    // -Dserver.virtualThreads=true: каждый запрос на своём виртуальном потоке (нужна Java 21+)
+    private static final boolean VIRTUAL_THREADS =
+            Boolean.getBoolean("server.virtualThreads") && VirtualThreads.isSupported();
+    private static final int MAX_VIRTUAL_REQUESTS = DECODE_QUEUE_CAPACITY + PROCESSING_QUEUE_CAPACITY;
+    // -Dserver.receiveShards=N: N циклов приёма на одном порту через SO_REUSEPORT
+    private static final int RECEIVE_SHARDS = Math.max(1, Integer.getInteger("server.receiveShards", 1));
+    // -Dserver.tcpPort=N: порт потокового транспорта для больших ответов, 0 — выключен
+    private static final int TCP_PORT = Integer.getInteger("server.tcpPort", PORT);
+
+    // Повтор этих команд с тем же id запроса не должен менять коллекцию второй раз
+    private static final Set<String> MUTATING_COMMANDS = Set.of(
+            "insert", "update", "remove_key", "remove_lower", "remove_lower_key",
+            "replace_if_lower", "clear", "execute_script", CommandWrapper.BATCH_COMMAND);
 
     private static Map<String, Command> commands;
     private static Executor executor;
     private static DatabaseManager dbManager;
+    private static Metrics metrics;
     private static Set<String> connectedClients = ConcurrentHashMap.newKeySet();
 
-    private static ExecutorService connectionPool = Executors.newCachedThreadPool();
-    private static ExecutorService processingPool = Executors.newFixedThreadPool(10);
+    private static ThreadPoolExecutor connectionPool = new ThreadPoolExecutor(
+            DECODE_THREADS, DECODE_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(DECODE_QUEUE_CAPACITY));
+    // При заполненной очереди обработки запрос сразу отклоняется ответом BUSY,
+    // чтобы задержка оставалась ограниченной, а клиент знал, когда повторить
+    private static ThreadPoolExecutor processingPool = new ThreadPoolExecutor(
+            PROCESSING_THREADS, PROCESSING_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(PROCESSING_QUEUE_CAPACITY));
     private static ForkJoinPool sendingPool = ForkJoinPool.commonPool();
+    // В режиме виртуальных потоков пулы выше не используются: число запросов в работе
+    // ограничено requestPermits, а одновременная работа с БД — dbPermits
+    private static ExecutorService virtualPool = VIRTUAL_THREADS ? VirtualThreads.newPerTaskExecutor("request-") : null;
+    private static final Semaphore requestPermits = new Semaphore(MAX_VIRTUAL_REQUESTS);
+    private static final Semaphore dbPermits = new Semaphore(PROCESSING_THREADS, true);
+    private static ScheduledExecutorService maintenancePool = Executors.newSingleThreadScheduledExecutor();
+
+    // Кадры ответов: короткие ответы занимают маленький буфер, фрагменты больших — полный
+    private static final BufferPool smallFrames = new BufferPool(SMALL_FRAME_SIZE, 4096);
+    private static final BufferPool largeFrames = new BufferPool(Frame.HEADER_SIZE + Frame.MAX_PAYLOAD, 512);
+    // Кодировщики ответов со своими буферами и Deflater; лишние после всплеска достаются GC
+    private static final ArrayBlockingQueue<FrameEncoder> frameEncoders = new ArrayBlockingQueue<>(FRAME_ENCODERS_POOLED);
+    private static final PendingResponses pendingResponses = new PendingResponses();
+    private static final SessionManager sessionManager = new SessionManager(SESSION_IDLE_TIMEOUT_MILLIS);
+    private static final ChangeBroadcaster changeBroadcaster = new ChangeBroadcaster(WATCH_TTL_MILLIS);
+    private static final IdempotencyCache idempotencyCache =
+            new IdempotencyCache(IDEMPOTENCY_CACHE_CAPACITY, IDEMPOTENCY_TTL_MILLIS);
+    // Дольше очереди запрос не живёт; запись старше — потерянная, её снимает очистка
+    private static final InFlightRequests inFlightRequests =
+            new InFlightRequests(2 * TimeUnit.NANOSECONDS.toMillis(MAX_QUEUE_WAIT_NANOS));
+    // Скользящее среднее времени выполнения команды, для оценки retry-after
+    private static final AtomicLong averageServiceNanos = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(1));
 
     public static void main(String[] args) {
         String dbHost = "pg";
@@ -41,21 +106,39 @@ public class ServerMain {
 
         try {
             dbManager = new DatabaseManager(dbUrl, dbUser, dbPassword);
-            System.out.println("Database connection established successfully");
+            Log.info("Database connection established successfully");
 
-            executor = new Executor(dbManager);
+            metrics = dbManager.getMetrics();
+            executor = new Executor(dbManager, sessionManager);
+            executor.addListener(changeBroadcaster);
             commands = executor.getCommands();
+            registerGauges();
+
+            Log.info("Server initialized. Loaded {} music bands.", executor.getSizeOfCollection());
+            if (VIRTUAL_THREADS) {
+                Log.info("Virtual threads enabled: up to {} requests in flight, {} at a time in the database",
+                        MAX_VIRTUAL_REQUESTS, PROCESSING_THREADS);
+            } else {
+                if (Boolean.getBoolean("server.virtualThreads")) {
+                    Log.warn("Virtual threads require Java 21 or newer, using thread pools");
+                }
+                Log.info("Thread pools initialized:");
+                Log.info("  - Connection pool ({} threads, queue {})", DECODE_THREADS, DECODE_QUEUE_CAPACITY);
+                Log.info("  - Processing pool ({} threads, queue {})", PROCESSING_THREADS, PROCESSING_QUEUE_CAPACITY);
+                Log.info("  - Sending pool (ForkJoinPool)");
+            }
 
-            System.out.println("Server initialized. Loaded " + executor.getSizeOfCollection() + " music bands.");
-            System.out.println("Thread pools initialized:");
-            System.out.println("  - Connection pool (CachedThreadPool)");
-            System.out.println("  - Processing pool (FixedThreadPool, 10 threads)");
-            System.out.println("  - Sending pool (ForkJoinPool)");
+            maintenancePool.scheduleWithFixedDelay(pendingResponses::expire, 1, 1, TimeUnit.SECONDS);
+            maintenancePool.scheduleWithFixedDelay(idempotencyCache::expire, 10, 10, TimeUnit.SECONDS);
+            maintenancePool.scheduleWithFixedDelay(inFlightRequests::expire, 1, 1, TimeUnit.SECONDS);
+            maintenancePool.scheduleWithFixedDelay(sessionManager::expire, 1, 1, TimeUnit.MINUTES);
+            maintenancePool.scheduleWithFixedDelay(changeBroadcaster::flush,
+                    WATCH_FLUSH_MILLIS, WATCH_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
 
             runServer();
 
         } catch (SQLException e) {
-            System.err.println("Fatal: Cannot connect to database: " + e.getMessage());
+            Log.error("Fatal: Cannot connect to database: {}", e.getMessage());
             System.exit(1);
         } finally {
             shutdownServer();
@@ -63,126 +146,380 @@ public class ServerMain {
     }
 
     private static void runServer() {
-        try (DatagramSocket socket = new DatagramSocket(PORT)) {
-            System.out.println("Server started on port " + PORT + ". Waiting for connections...");
+        int shards = RECEIVE_SHARDS;
+        if (shards > 1 && !UdpEventLoop.isReusePortSupported()) {
+            Log.warn("SO_REUSEPORT is not supported on this platform, using a single receive loop");
+            shards = 1;
+        }
 
-            byte[] buffer = new byte[BUFFER_SIZE];
+        List<UdpEventLoop> eventLoops = new ArrayList<>(shards);
+        TcpEventLoop streamLoop = null;
+        try {
+            for (int i = 0; i < shards; i++) {
+                eventLoops.add(new UdpEventLoop(PORT, BUFFER_SIZE, shards > 1, ServerMain::dispatchPacket));
+            }
+            if (TCP_PORT > 0) {
+                streamLoop = new TcpEventLoop(TCP_PORT, ServerMain::dispatchStreamRequest);
+            }
+        } catch (IOException e) {
+            Log.error("Server I/O error: {}", e.getMessage());
+            eventLoops.forEach(UdpEventLoop::close);
+            return;
+        }
 
-            while (true) {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        registerTrafficGauges(eventLoops);
 
-                socket.receive(packet);
+        // Все циклы, кроме первого, работают в своих потоках; первый — в главном
+        List<Thread> shardThreads = new ArrayList<>();
+        for (int i = 1; i < shards; i++) {
+            Thread thread = new Thread(eventLoops.get(i), "udp-shard-" + i);
+            thread.start();
+            shardThreads.add(thread);
+        }
+        if (streamLoop != null) {
+            Thread thread = new Thread(streamLoop, "tcp-loop");
+            thread.start();
+            shardThreads.add(thread);
+        }
+        Log.info("Server started on port {}{}{}. Waiting for connections...", PORT,
+                shards > 1 ? " with " + shards + " receive loops" : "",
+                streamLoop != null ? ", TCP on port " + TCP_PORT : "");
 
-                connectionPool.submit(new ConnectionHandler(socket, packet));
+        eventLoops.get(0).run();
+
+        for (int i = 1; i < shards; i++) {
+            eventLoops.get(i).stop();
+        }
+        if (streamLoop != null) {
+            streamLoop.stop();
+        }
+        for (Thread thread : shardThreads) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        } catch (SocketException e) {
-            System.err.println("Server socket error: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("Server I/O error: " + e.getMessage());
         }
     }
 
-    private static class ConnectionHandler implements Runnable {
-        private final DatagramSocket socket;
-        private final DatagramPacket originalPacket;
-        private final byte[] packetDataCopy;
+    /**
+     * Вызывается в потоке цикла событий; буфер датаграммы цикл переиспользует сразу
+     * после возврата, поэтому запрос уходит дальше копией с телом точного размера.
+     */
+    private static void dispatchPacket(UdpEventLoop loop, ByteBuffer packet, SocketAddress sender) {
+        Frame frame;
+        try {
+            frame = Frame.decode(packet);
+        } catch (ProtocolException e) {
+            Log.warn("Malformed datagram from {}: {}", getClientInfo(sender), e.getMessage());
+            return;
+        }
 
-        public ConnectionHandler(DatagramSocket socket, DatagramPacket originalPacket) {
-            this.socket = socket;
-            this.originalPacket = originalPacket;
+        try {
+            switch (frame.getType()) {
+                case REQUEST:
+                    // Повтор запроса, на который ответ уже отправлен: ответ потерялся целиком
+                    if (pendingResponses.retransmit(loop, sender, frame.getRequestId(), new int[0])) {
+                        break;
+                    }
+                    // Повтор запроса, который ещё выполняется: ответ уйдёт, когда он завершится
+                    if (!inFlightRequests.begin(sender, frame.getRequestId())) {
+                        break;
+                    }
+                    // Ответ мог быть отправлен между двумя проверками выше
+                    if (pendingResponses.retransmit(loop, sender, frame.getRequestId(), new int[0])) {
+                        inFlightRequests.finish(sender, frame.getRequestId());
+                        break;
+                    }
+                    if (VIRTUAL_THREADS) {
+                        startVirtualRequest(new ConnectionHandler(loop, frame.copy(), sender));
+                    } else {
+                        connectionPool.execute(new ConnectionHandler(loop, frame.copy(), sender));
+                    }
+                    break;
+                case NACK:
+                    loop.onLoss(sender);
+                    pendingResponses.retransmit(loop, sender, frame.getRequestId(), frame.getNackIndices());
+                    break;
+                case ACK:
+                    loop.onDelivered(sender);
+                    pendingResponses.acknowledge(sender, frame.getRequestId());
+                    break;
+                default:
+                    Log.warn("Unexpected {} frame from {}", frame.getType(), getClientInfo(sender));
+            }
+        } catch (ProtocolException e) {
+            Log.warn("Malformed {} frame from {}: {}", frame.getType(), getClientInfo(sender), e.getMessage());
+        } catch (RejectedExecutionException e) {
+            // Очередь декодирования переполнена — отвечаем BUSY прямо из цикла событий
+            Log.warn("Rejected request from {}: server overloaded", getClientInfo(sender));
+            inFlightRequests.finish(sender, frame.getRequestId());
+            loop.send(Frame.encodeBusy(frame.getRequestId(), retryAfterMillis()), sender);
+        }
+    }
 
-            this.packetDataCopy = Arrays.copyOf(originalPacket.getData(), originalPacket.getLength());
+    private static class ConnectionHandler implements Runnable {
+        private final UdpEventLoop loop;
+        private final Frame frame;
+        private final SocketAddress clientAddress;
+
+        public ConnectionHandler(UdpEventLoop loop, Frame frame, SocketAddress clientAddress) {
+            this.loop = loop;
+            this.frame = frame;
+            this.clientAddress = clientAddress;
         }
 
         @Override
         public void run() {
             try {
-                ByteArrayInputStream byteStream = new ByteArrayInputStream(packetDataCopy);
-                ObjectInputStream objectStream = new ObjectInputStream(byteStream);
-                CommandWrapper commandWrapper = (CommandWrapper) objectStream.readObject();
+                CommandWrapper commandWrapper = WireCodec.decodeRequest(frame.getPayload());
 
-                String clientKey = originalPacket.getAddress().getHostAddress() + ":" + originalPacket.getPort();
+                String clientKey = getClientInfo(clientAddress);
                 if (connectedClients.add(clientKey)) {
-                    System.out.println("New client connected: " + clientKey);
+                    Log.info("New client connected: {}", clientKey);
                 }
 
-                System.out.println("Received command from " + clientKey + ": " + commandWrapper.getCommandName());
+                Log.request("Received command from {}: {}", clientKey, commandWrapper.getCommandName());
 
-                processingPool.submit(new CommandProcessor(socket, originalPacket, commandWrapper, clientKey));
+                CommandProcessor processor = new CommandProcessor(loop, clientAddress, frame, commandWrapper, clientKey);
+                if (VIRTUAL_THREADS) {
+                    processor.run();
+                    return;
+                }
+                try {
+                    processingPool.execute(processor);
+                } catch (RejectedExecutionException e) {
+                    Log.warn("Rejected command from {}: processing queue is full", clientKey);
+                    inFlightRequests.finish(clientAddress, frame.getRequestId());
+                    loop.send(Frame.encodeBusy(frame.getRequestId(), retryAfterMillis()), clientAddress);
+                }
 
-            } catch (IOException | ClassNotFoundException e) {
-                System.err.println("Error processing request from " + getClientInfo(originalPacket) + ": " + e.getMessage());
-                sendErrorResponse(socket, originalPacket, "Error processing request: " + e.getMessage());
+            } catch (IOException e) {
+                Log.warn("Error processing request from {}: {}", getClientInfo(clientAddress), e.getMessage());
+                sendErrorResponse(loop, clientAddress, frame, "Error processing request: " + e.getMessage());
             }
         }
     }
 
     private static class CommandProcessor implements Runnable {
-        private final DatagramSocket socket;
-        private final DatagramPacket receivePacket;
+        private final UdpEventLoop loop;
+        private final SocketAddress clientAddress;
+        private final Frame request;
         private final CommandWrapper commandWrapper;
         private final String clientKey;
+        private final long enqueuedAt = System.nanoTime();
 
-        public CommandProcessor(DatagramSocket socket, DatagramPacket receivePacket,
+        public CommandProcessor(UdpEventLoop loop, SocketAddress clientAddress, Frame request,
                                 CommandWrapper commandWrapper, String clientKey) {
-            this.socket = socket;
-            this.receivePacket = receivePacket;
+            this.loop = loop;
+            this.clientAddress = clientAddress;
+            this.request = request;
             this.commandWrapper = commandWrapper;
             this.clientKey = clientKey;
         }
 
         @Override
         public void run() {
+            long waited = System.nanoTime() - enqueuedAt;
+            if (waited > MAX_QUEUE_WAIT_NANOS) {
+                dropStale();
+                return;
+            }
+            if (!VIRTUAL_THREADS) {
+                execute();
+                return;
+            }
+
+            // На виртуальном потоке очередь — это ожидание разрешения на работу с БД
+            try {
+                if (!dbPermits.tryAcquire(MAX_QUEUE_WAIT_NANOS - waited, TimeUnit.NANOSECONDS)) {
+                    dropStale();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropStale();
+                return;
+            }
+            try {
+                execute();
+            } finally {
+                dbPermits.release();
+            }
+        }
+
+        private void dropStale() {
+            inFlightRequests.finish(clientAddress, request.getRequestId());
+            Log.warn("Dropped stale command from {}: waited {} ms in queue",
+                    clientKey, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAt));
+        }
+
+        private void execute() {
+            long startedAt = System.nanoTime();
+            // Кэш идемпотентности — только для проверенного пользователя, ключ — его id
+            User owner = MUTATING_COMMANDS.contains(commandWrapper.getCommandName())
+                    ? authenticateUser(commandWrapper) : null;
             try {
-                // Обрабатываем команду (синхронно в processingPool)
-                Object response = processCommandWithMap(commandWrapper);
+                if (owner != null) {
+                    IdempotencyCache.Claim claim = idempotencyCache.begin(owner.getId(), request.getRequestId());
+                    if (claim.getStatus() == IdempotencyCache.Status.DONE) {
+                        dispatchResponse(new ResponseSender(loop, clientAddress, request, claim.getResponse(), clientKey));
+                        return;
+                    }
+                    if (claim.getStatus() == IdempotencyCache.Status.IN_PROGRESS) {
+                        // Тот же запрос с другого адреса: ответ уйдёт туда, откуда пришёл исходный
+                        inFlightRequests.finish(clientAddress, request.getRequestId());
+                        return;
+                    }
+                }
+
+                // Обрабатываем команду (синхронно в processingPool или на виртуальном потоке)
+                Response response;
+                if (MUTATING_COMMANDS.contains(commandWrapper.getCommandName())) {
+                    // Пользователь уже проверен выше — второй раз не ходим
+                    response = processMutatingRequest(commandWrapper, owner);
+                } else if (CommandWrapper.WATCH_COMMAND.equals(commandWrapper.getCommandName())) {
+                    response = processWatch(loop, clientAddress, commandWrapper);
+                } else {
+                    response = processRequest(commandWrapper);
+                }
+                recordServiceTime(commandWrapper, System.nanoTime() - startedAt);
+                if (owner != null) {
+                    idempotencyCache.complete(owner.getId(), request.getRequestId(), response);
+                }
 
                 // Передаем отправку ответа в sendingPool (ForkJoinPool)
-                sendingPool.submit(new ResponseSender(socket, receivePacket, response, clientKey));
+                dispatchResponse(new ResponseSender(loop, clientAddress, request, response, clientKey));
 
             } catch (Exception e) {
-                System.err.println("Error executing command from " + clientKey + ": " + e.getMessage());
-                sendErrorResponse(socket, receivePacket, "Error executing command: " + e.getMessage());
+                if (owner != null) {
+                    idempotencyCache.abandon(owner.getId(), request.getRequestId());
+                }
+                Log.error("Error executing command from {}: {}", clientKey, e.getMessage());
+                sendErrorResponse(loop, clientAddress, request, "Error executing command: " + e.getMessage());
             }
         }
     }
 
     private static class ResponseSender implements Runnable {
-        private final DatagramSocket socket;
-        private final DatagramPacket receivePacket;
-        private final Object response;
+        private final UdpEventLoop loop;
+        private final SocketAddress clientAddress;
+        private final Frame request;
+        private final Response response;
         private final String clientKey;
 
-        public ResponseSender(DatagramSocket socket, DatagramPacket receivePacket,
-                              Object response, String clientKey) {
-            this.socket = socket;
-            this.receivePacket = receivePacket;
+        public ResponseSender(UdpEventLoop loop, SocketAddress clientAddress, Frame request,
+                              Response response, String clientKey) {
+            this.loop = loop;
+            this.clientAddress = clientAddress;
+            this.request = request;
             this.response = response;
             this.clientKey = clientKey;
         }
 
         @Override
         public void run() {
-            try {
-                if (response instanceof ArrayList) {
-                    ArrayList<String> responseList = (ArrayList<String>) response;
-                    for (String responseString : responseList) {
-                        sendResponse(socket, receivePacket, responseString);
-                        Thread.sleep(10);
-                    }
-                } else {
-                    sendResponse(socket, receivePacket, response);
-                }
+            sendResponse(loop, clientAddress, request, response);
 
-                System.out.println("Response sent to " + clientKey);
+            Log.request("Response sent to {}", clientKey);
+        }
+    }
 
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Error sending response to " + clientKey + ": " + e.getMessage());
-            }
+    private static Response processRequest(CommandWrapper commandWrapper) {
+        if (CommandWrapper.BATCH_COMMAND.equals(commandWrapper.getCommandName())) {
+            return processBatch(commandWrapper);
+        }
+        if (commandWrapper.getPageSize() != null) {
+            return processPage(commandWrapper);
+        }
+        if (CommandWrapper.SYNC_COMMAND.equals(commandWrapper.getCommandName())) {
+            return processSync(commandWrapper);
+        }
+        if ("login".equals(commandWrapper.getCommandName())) {
+            // Ответ на login несёт токен новой сессии
+            LoginCommand login = (LoginCommand) commands.get("login");
+            return login.login(commandWrapper.getLogin(), commandWrapper.getPasswordHash());
+        }
+        return new Response(processCommandWithMap(commandWrapper));
+    }
+
+    /**
+     * Изменяющая команда, для которой пользователь уже проверен в {@link CommandProcessor}.
+     *
+     * @param owner результат {@link #authenticateUser}; null — проверка не прошла
+     */
+    private static Response processMutatingRequest(CommandWrapper commandWrapper, User owner) {
+        if (owner == null) {
+            return new Response(authenticationError(commandWrapper));
+        }
+        if (CommandWrapper.BATCH_COMMAND.equals(commandWrapper.getCommandName())) {
+            return processBatch(commandWrapper, owner);
+        }
+        return new Response(processAuthenticatedCommand(commandWrapper, owner));
+    }
+
+    /**
+     * Подписывает адрес клиента на изменения коллекции. События уходят через
+     * тот же цикл событий, что принял запрос, чтобы клиент видел один адрес сервера.
+     */
+    private static Response processWatch(UdpEventLoop loop, SocketAddress clientAddress, CommandWrapper commandWrapper) {
+        if (authenticateUser(commandWrapper) == null) {
+            return new Response(authenticationError(commandWrapper));
+        }
+        changeBroadcaster.subscribe(loop, clientAddress);
+        return new Response("Watching collection changes for "
+                + TimeUnit.MILLISECONDS.toSeconds(changeBroadcaster.getTtlMillis())
+                + " s, current version " + executor.getVersion());
+    }
+
+    /**
+     * sync: key — версия реплики клиента (-1, если реплики ещё нет), argument — эпоха сервера,
+     * от которой эта версия получена.
+     */
+    private static Response processSync(CommandWrapper commandWrapper) {
+        if (authenticateUser(commandWrapper) == null) {
+            return new Response(authenticationError(commandWrapper));
+        }
+        long since = commandWrapper.getKey() == null ? -1 : commandWrapper.getKey();
+        long epoch = commandWrapper.getArgument() instanceof Long ? (Long) commandWrapper.getArgument() : 0;
+        return Response.sync(executor.sync(epoch, since));
+    }
+
+    private static Response processPage(CommandWrapper commandWrapper) {
+        String commandName = commandWrapper.getCommandName();
+        Command command = commands.get(commandName);
+        if (!(command instanceof PagedCommand)) {
+            return new Response("Error: Command '" + commandName + "' does not support paging");
+        }
+        if (authenticateUser(commandWrapper) == null) {
+            return new Response(authenticationError(commandWrapper));
+        }
+        return ((PagedCommand) command).executePage(commandWrapper.getPageSize(), commandWrapper.getCursor());
+    }
+
+    private static Response processBatch(CommandWrapper batch) {
+        // Один поход в БД за пользователем на весь пакет
+        User user = authenticateUser(batch);
+        if (user == null) {
+            return new Response(authenticationError(batch));
         }
+        return processBatch(batch, user);
     }
 
-    private static Object processCommandWithMap(CommandWrapper commandWrapper) {
+    private static Response processBatch(CommandWrapper batch, User user) {
+        List<CommandWrapper> entries = batch.getBatch();
+        if (entries == null || entries.isEmpty()) {
+            return new Response("Error: Batch contains no commands");
+        }
+
+        List<String> results = new ArrayList<>(entries.size());
+        for (CommandWrapper entry : entries) {
+            results.add(processAuthenticatedCommand(entry, user));
+        }
+        return Response.batch(results);
+    }
+
+    private static String processCommandWithMap(CommandWrapper commandWrapper) {
         try {
             String commandName = commandWrapper.getCommandName();
             Command command = commands.get(commandName);
@@ -191,69 +528,81 @@ public class ServerMain {
                 return "Error: Unknown command '" + commandName + "'";
             }
 
-            boolean isAuthCommand = "register".equals(commandName) || "login".equals(commandName);
+            if (isAuthCommand(commandName)) {
+                return command.execute(CommandContext.credentials(
+                        commandWrapper.getLogin(), commandWrapper.getPasswordHash()));
+            }
 
-            User user = null;
-            if (!isAuthCommand) {
-                user = authenticateUser(commandWrapper);
-                if (user == null) {
-                    return "Error: Authentication required. Please login first.";
-                }
+            User user = authenticateUser(commandWrapper);
+            if (user == null) {
+                return authenticationError(commandWrapper);
             }
 
-            if (isAuthCommand) {
-                if (command instanceof RegisterCommand) {
-                    ((RegisterCommand) command).setCredentials(
-                            commandWrapper.getLogin(),
-                            commandWrapper.getPasswordHash()
-                    );
-                } else if (command instanceof LoginCommand) {
-                    ((LoginCommand) command).setCredentials(
-                            commandWrapper.getLogin(),
-                            commandWrapper.getPasswordHash()
-                    );
-                }
-                return command.execute();
+            return processAuthenticatedCommand(commandWrapper, user);
+
+        } catch (Exception e) {
+            return "Error processing command: " + e.getMessage();
+        }
+    }
+
+    private static String processAuthenticatedCommand(CommandWrapper commandWrapper, User user) {
+        try {
+            String commandName = commandWrapper.getCommandName();
+            Command command = commands.get(commandName);
+
+            if (command == null) {
+                return "Error: Unknown command '" + commandName + "'";
+            }
+
+            if (isAuthCommand(commandName)) {
+                return "Error: Command '" + commandName + "' cannot be part of a batch";
             }
 
             if (command.requiresUser() && user == null) {
                 return "Error: Authentication required for command '" + commandName + "'";
             }
 
+            String argument = commandArgument(commandWrapper, commandName);
             if (command instanceof CommandWithArgument) {
-                processCommandArguments((CommandWithArgument<?>) command, commandWrapper, commandName);
+                ((CommandWithArgument<?>) command).parseArgument(argument);
             }
 
-            return executeCommand(command, commandWrapper, user);
+            return executeCommand(command, new CommandContext(argument, commandWrapper.getMusicBand(), user));
 
         } catch (Exception e) {
             return "Error processing command: " + e.getMessage();
         }
     }
 
-    private static void processCommandArguments(CommandWithArgument<?> command,
-                                                CommandWrapper wrapper, String commandName) {
+    private static boolean isAuthCommand(String commandName) {
+        return "register".equals(commandName) || "login".equals(commandName);
+    }
+
+    /**
+     * Аргумент команды строкой: ключ для команд над элементом, иначе аргумент из запроса.
+     */
+    private static String commandArgument(CommandWrapper wrapper, String commandName) {
         switch (commandName) {
             case "insert":
             case "update":
             case "remove_key":
             case "remove_lower_key":
             case "replace_if_lower":
-                if (wrapper.getKey() != null) {
-                    command.setArgument(wrapper.getKey().toString());
-                }
-                break;
+                return wrapper.getKey() == null ? null : wrapper.getKey().toString();
 
             case "filter_starts_with_name":
             case "execute_script":
-                if (wrapper.getArgument() != null) {
-                    command.setArgument(wrapper.getArgument().toString());
-                }
-                break;
+                return wrapper.getArgument() == null ? null : wrapper.getArgument().toString();
+
+            default:
+                return null;
         }
     }
 
     private static User authenticateUser(CommandWrapper commandWrapper) {
+        if (commandWrapper.getSessionToken() != null) {
+            return sessionManager.get(commandWrapper.getSessionToken());
+        }
         if (commandWrapper.getLogin() == null || commandWrapper.getPasswordHash() == null) {
             return null;
         }
@@ -261,113 +610,262 @@ public class ServerMain {
         try {
             return dbManager.authenticateUser(commandWrapper.getLogin(), commandWrapper.getPasswordHash());
         } catch (SQLException e) {
-            System.err.println("Database error during authentication: " + e.getMessage());
+            Log.error("Database error during authentication: {}", e.getMessage());
             return null;
         }
     }
 
-    private static Object executeCommand(Command command, CommandWrapper commandWrapper, User user) {
+    private static String authenticationError(CommandWrapper commandWrapper) {
+        return commandWrapper.getSessionToken() != null
+                ? SessionManager.SESSION_EXPIRED
+                : "Error: Authentication required. Please login first.";
+    }
+
+    private static String executeCommand(Command command, CommandContext context) {
         try {
-            String commandName = command.getCommandName();
+            if (command.requiresMusicBand() && context.getMusicBand() == null) {
+                return "Error: No MusicBand data provided";
+            }
+            return command.execute(context);
 
-            // Обработка команд с MusicBand
-            if (commandName.equals("insert") || commandName.equals("update") ||
-                    commandName.equals("replace_if_lower") || commandName.equals("remove_lower")) {
+        } catch (Exception e) {
+            return "Error executing command: " + e.getMessage();
+        }
+    }
 
-                if (commandWrapper.getMusicBand() != null) {
-                    return executeMusicBandCommand(command, commandWrapper.getMusicBand(), user);
-                }
-                return "Error: No MusicBand data provided";
+    private static void sendResponse(UdpEventLoop loop, SocketAddress clientAddress, Frame request,
+                                     Response response) {
+        BufferPool.Lease[] frames = encodeFrames(request.getRequestId(),
+                request.hasFlag(Frame.FLAG_ACCEPTS_DEFLATE), response);
+        // Хранилище получает по своей ссылке; свою держим, пока кадры не поставлены в очередь цикла,
+        // иначе параллельный ACK или повторный ответ с тем же id мог бы освободить их раньше
+        for (BufferPool.Lease frame : frames) {
+            frame.retain();
+        }
+        pendingResponses.register(clientAddress, request.getRequestId(), frames);
+        // Дальше повторы этого запроса обслуживает pendingResponses
+        inFlightRequests.finish(clientAddress, request.getRequestId());
+        for (BufferPool.Lease frame : frames) {
+            loop.send(frame, clientAddress);
+            frame.release();
+        }
+    }
+
+    /**
+     * Кодирует ответ сразу в кадры DATA в буферах из пулов.
+     * Вызывающий владеет возвращёнными арендами и должен их освободить.
+     */
+    static BufferPool.Lease[] encodeFrames(long requestId, boolean acceptsDeflate, Response response) {
+        FrameEncoder encoder = frameEncoders.poll();
+        if (encoder == null) {
+            encoder = new FrameEncoder(smallFrames, largeFrames);
+        }
+        try {
+            return encoder.encode(requestId, acceptsDeflate, response);
+        } finally {
+            frameEncoders.offer(encoder);
+        }
+    }
+
+    /**
+     * Запрос по TCP: та же обработка, что у UDP, но без повторов, кэша идемпотентности
+     * и фрагментации — доставку и скорость обеспечивает TCP.
+     */
+    private static void dispatchStreamRequest(TcpEventLoop.Connection connection, long requestId, ByteBuffer request) {
+        StreamRequest task = new StreamRequest(connection, requestId, request);
+        try {
+            if (VIRTUAL_THREADS) {
+                startVirtualRequest(task);
+            } else {
+                processingPool.execute(task);
             }
+        } catch (RejectedExecutionException e) {
+            Log.warn("Rejected TCP command from {}: processing queue is full",
+                    getClientInfo(connection.getRemoteAddress()));
+            connection.send(requestId, WireCodec.encodeResponse(
+                    new Response("Error: Server is busy, retry in " + retryAfterMillis() + " ms")));
+        }
+    }
 
-            if (command instanceof CommandWithUser) {
-                return ((CommandWithUser) command).execute(user);
+    private static class StreamRequest implements Runnable {
+        private final TcpEventLoop.Connection connection;
+        private final long requestId;
+        private final ByteBuffer request;
+        private final long enqueuedAt = System.nanoTime();
+
+        private StreamRequest(TcpEventLoop.Connection connection, long requestId, ByteBuffer request) {
+            this.connection = connection;
+            this.requestId = requestId;
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            String clientKey = getClientInfo(connection.getRemoteAddress());
+            Response response;
+            try {
+                CommandWrapper commandWrapper = WireCodec.decodeRequest(request);
+                Log.request("Received TCP command from {}: {}", clientKey, commandWrapper.getCommandName());
+                if (CommandWrapper.WATCH_COMMAND.equals(commandWrapper.getCommandName())) {
+                    response = new Response("Error: Command 'watch' is only available over UDP");
+                } else if (VIRTUAL_THREADS) {
+                    long remaining = MAX_QUEUE_WAIT_NANOS - (System.nanoTime() - enqueuedAt);
+                    if (!dbPermits.tryAcquire(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                        response = new Response("Error: Server is busy, retry in " + retryAfterMillis() + " ms");
+                    } else {
+                        try {
+                            response = execute(commandWrapper);
+                        } finally {
+                            dbPermits.release();
+                        }
+                    }
+                } else if (System.nanoTime() - enqueuedAt > MAX_QUEUE_WAIT_NANOS) {
+                    // Как и для UDP, устаревший запрос не выполняем, но соединение ждёт ответа
+                    Log.warn("Dropped stale TCP command from {}: waited {} ms in queue", clientKey,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAt));
+                    response = new Response("Error: Server is busy, retry in " + retryAfterMillis() + " ms");
+                } else {
+                    response = execute(commandWrapper);
+                }
+            } catch (IOException e) {
+                response = new Response("Error processing request: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                Log.error("Error executing TCP command from {}: {}", clientKey, e.getMessage());
+                response = new Response("Error executing command: " + e.getMessage());
             }
+            connection.send(requestId, WireCodec.encodeResponse(response));
+        }
 
-            return processSimpleCommand(command);
+        private Response execute(CommandWrapper commandWrapper) {
+            long startedAt = System.nanoTime();
+            Response response = processRequest(commandWrapper);
+            recordServiceTime(commandWrapper, System.nanoTime() - startedAt);
+            return response;
+        }
+    }
 
-        } catch (Exception e) {
-            return "Error executing command: " + e.getMessage();
+    /**
+     * Запускает запрос на отдельном виртуальном потоке; сверх лимита — RejectedExecutionException.
+     */
+    private static void startVirtualRequest(Runnable handler) {
+        if (!requestPermits.tryAcquire()) {
+            throw new RejectedExecutionException("Too many requests in flight");
+        }
+        try {
+            virtualPool.execute(() -> {
+                try {
+                    handler.run();
+                } finally {
+                    requestPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            requestPermits.release();
+            throw e;
         }
     }
 
-    private static Object executeMusicBandCommand(Command command, MusicBand band, User user) {
-        if (command instanceof Insert) {
-            return ((Insert) command).executeWithMusicBand(band, user);
-        } else if (command instanceof Update) {
-            return ((Update) command).executeWithMusicBand(band, user);
-        } else if (command instanceof Replace_if_lower) {
-            return ((Replace_if_lower) command).executeWithMusicBand(band, user);
-        } else if (command instanceof Remove_lower) {
-            return ((Remove_lower) command).executeWithMusicBand(band, user);
+    private static void dispatchResponse(ResponseSender sender) {
+        if (VIRTUAL_THREADS) {
+            // Отправка только кладёт кадры в очередь цикла событий — делаем это на том же потоке
+            sender.run();
+        } else {
+            sendingPool.submit(sender);
         }
-        return "Error: Unsupported command type";
     }
 
-    private static Object processSimpleCommand(Command command) {
-        String result = command.execute();
-        int chunkSizeBytes = 60000;
-        byte[] allBytes = result.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    private static void recordServiceTime(CommandWrapper commandWrapper, long nanos) {
+        // Обновляют все потоки обработки сразу — без CAS часть замеров терялась бы
+        averageServiceNanos.getAndUpdate(average -> average + (nanos - average) / 8);
+        metrics.recordCommand(metricName(commandWrapper.getCommandName()), nanos);
+    }
 
-        if (allBytes.length <= chunkSizeBytes) {
-            return result; // Не нужно разбивать на чанки
+    /**
+     * Имя команды для статистики: произвольные имена от клиентов не должны плодить счётчики.
+     */
+    private static String metricName(String commandName) {
+        if (commands.containsKey(commandName) || CommandWrapper.BATCH_COMMAND.equals(commandName)
+                || CommandWrapper.SYNC_COMMAND.equals(commandName) || CommandWrapper.WATCH_COMMAND.equals(commandName)) {
+            return commandName;
         }
+        return "unknown";
+    }
 
-        List<String> chunks = new ArrayList<>();
-        for (int i = 0; i < allBytes.length; i += chunkSizeBytes) {
-            int end = Math.min(i + chunkSizeBytes, allBytes.length);
-            byte[] chunkBytes = new byte[end - i];
-            System.arraycopy(allBytes, i, chunkBytes, 0, chunkBytes.length);
-            String chunk = new String(chunkBytes, java.nio.charset.StandardCharsets.UTF_8);
-            chunks.add(chunk);
+    /**
+     * Показатели для команды stats, которые считаются в момент вывода.
+     */
+    private static void registerGauges() {
+        if (VIRTUAL_THREADS) {
+            metrics.gauge("virtual.requestsInFlight", () -> MAX_VIRTUAL_REQUESTS - requestPermits.availablePermits());
+            metrics.gauge("virtual.waitingForDatabase", dbPermits::getQueueLength);
+        } else {
+            metrics.gauge("connectionPool.queue", () -> connectionPool.getQueue().size());
+            metrics.gauge("connectionPool.active", connectionPool::getActiveCount);
+            metrics.gauge("processingPool.queue", () -> processingPool.getQueue().size());
+            metrics.gauge("processingPool.active", processingPool::getActiveCount);
+            metrics.gauge("sendingPool.queue",
+                    () -> sendingPool.getQueuedSubmissionCount() + sendingPool.getQueuedTaskCount());
+            metrics.gauge("sendingPool.active", sendingPool::getActiveThreadCount);
         }
-        return chunks;
+        metrics.gauge("sessions", sessionManager::size);
+        metrics.gauge("watchers", changeBroadcaster::size);
+        metrics.gauge("pendingResponses", pendingResponses::size);
+        metrics.gauge("inFlightRequests", inFlightRequests::size);
+        metrics.gauge("collection.size", executor::getSizeOfCollection);
+        metrics.gauge("log.dropped", Log::dropped);
     }
 
-    private static void sendResponse(DatagramSocket socket, DatagramPacket receivePacket, Object response)
-            throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(response);
-        oos.flush();
+    private static void registerTrafficGauges(List<UdpEventLoop> eventLoops) {
+        metrics.gauge("udp.datagramsIn", () -> eventLoops.stream().mapToLong(UdpEventLoop::getDatagramsIn).sum());
+        metrics.gauge("udp.datagramsOut", () -> eventLoops.stream().mapToLong(UdpEventLoop::getDatagramsOut).sum());
+        metrics.gauge("udp.bytesIn", () -> eventLoops.stream().mapToLong(UdpEventLoop::getBytesIn).sum());
+        metrics.gauge("udp.bytesOut", () -> eventLoops.stream().mapToLong(UdpEventLoop::getBytesOut).sum());
+    }
 
-        byte[] responseData = baos.toByteArray();
-        DatagramPacket responsePacket = new DatagramPacket(
-                responseData, responseData.length,
-                receivePacket.getAddress(), receivePacket.getPort()
-        );
-        socket.send(responsePacket);
+    /**
+     * Примерное время, за которое рассосётся текущая очередь обработки.
+     */
+    private static int retryAfterMillis() {
+        int queued = VIRTUAL_THREADS ? dbPermits.getQueueLength() : processingPool.getQueue().size();
+        long queueNanos = queued * averageServiceNanos.get() / PROCESSING_THREADS;
+        long millis = TimeUnit.NANOSECONDS.toMillis(queueNanos);
+        return (int) Math.max(MIN_RETRY_AFTER_MILLIS, Math.min(MAX_RETRY_AFTER_MILLIS, millis));
     }
 
-    private static void sendErrorResponse(DatagramSocket socket, DatagramPacket receivePacket, String errorMessage) {
-        try {
-            sendResponse(socket, receivePacket, errorMessage);
-        } catch (IOException ex) {
-            System.err.println("Failed to send error response: " + ex.getMessage());
-        }
+    private static void sendErrorResponse(UdpEventLoop loop, SocketAddress clientAddress, Frame request,
+                                          String errorMessage) {
+        sendResponse(loop, clientAddress, request, new Response(errorMessage));
     }
 
     private static void shutdownServer() {
-        System.out.println("Shutting down server...");
+        Log.info("Shutting down server...");
 
         shutdownPools();
 
         if (dbManager != null) {
             try {
                 dbManager.close();
-                System.out.println("Database connection closed");
+                Log.info("Database connection closed");
             } catch (SQLException e) {
-                System.err.println("Error closing database connection: " + e.getMessage());
+                Log.error("Error closing database connection: {}", e.getMessage());
             }
         }
 
-        System.out.println("Server shutdown complete");
+        Log.info("Server shutdown complete");
+        Log.shutdown();
         System.exit(1);
     }
 
     private static void shutdownPools() {
-        System.out.println("Shutting down thread pools...");
+        Log.info("Shutting down thread pools...");
 
+        maintenancePool.shutdownNow();
+        if (virtualPool != null) {
+            virtualPool.shutdown();
+        }
         connectionPool.shutdown();
         processingPool.shutdown();
         sendingPool.shutdown();
@@ -390,7 +888,11 @@ public class ServerMain {
         }
     }
 
-    private static String getClientInfo(DatagramPacket packet) {
-        return packet.getAddress().getHostAddress() + ":" + packet.getPort();
+    private static String getClientInfo(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return inet.getAddress().getHostAddress() + ":" + inet.getPort();
+        }
+        return String.valueOf(address);
     }
 }
\ No newline at end of file
@@ -0,0 +1,357 @@
+package org.example;
+
+import network.StreamFraming;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Неблокирующий TCP-цикл для больших ответов. Запросы приходят сообщениями
+ * {@link StreamFraming}, ответы на одном соединении могут уходить в любом порядке.
+ * Как и в {@link UdpEventLoop}, весь ввод-вывод выполняется в одном потоке,
+ * а обработчики только ставят ответы в очередь соединения.
+ * <p>
+ * Скорость отправки регулирует ядро: ответ пишется, пока принимает сокет.
+ * Если клиент не успевает читать и очередь соединения вырастает больше
+ * {@link #MAX_PENDING_OUTPUT}, цикл перестаёт читать новые запросы этого клиента.
+ * <p>
+ * Соединений не больше {@link #MAX_CONNECTIONS}. Буфер чтения растёт по мере
+ * прихода байт, а не по объявленной длине сообщения. Соединение закрывается,
+ * если начатый запрос не дошёл за {@link #PARTIAL_MESSAGE_TIMEOUT_NANOS}
+ * или соединение простаивает дольше {@link #IDLE_TIMEOUT_NANOS}.
+ */
+public class TcpEventLoop implements Runnable {
+
+    public interface RequestHandler {
+        /**
+         * @param request тело запроса; буфер принадлежит обработчику
+         */
+        void onRequest(Connection connection, long requestId, ByteBuffer request);
+    }
+
+    private static final int INITIAL_READ_BUFFER_SIZE = 4 * 1024;
+    private static final long MAX_PENDING_OUTPUT = 16L * 1024 * 1024;
+    private static final int MAX_CONNECTIONS = 256;
+    // Простой — ни запросов в работе, ни прочитанных или отправленных байт
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private static final long PARTIAL_MESSAGE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final RequestHandler handler;
+    private final Queue<Connection> writeReady = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    // Только поток цикла
+    private final Set<Connection> connections = new HashSet<>();
+    private boolean capacityReported;
+    private volatile boolean running = true;
+
+    public TcpEventLoop(int port, RequestHandler handler) throws IOException {
+        this.handler = handler;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            long nextSweep = System.nanoTime();
+            while (running) {
+                selector.select(SWEEP_INTERVAL_MILLIS);
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey selected = keys.next();
+                    keys.remove();
+                    if (!selected.isValid()) {
+                        continue;
+                    }
+                    if (selected.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) selected.attachment();
+                    try {
+                        if (selected.isReadable()) {
+                            connection.read();
+                        }
+                        if (selected.isValid() && selected.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException e) {
+                        connection.close(e.getMessage());
+                    }
+                }
+
+                Connection connection;
+                while ((connection = writeReady.poll()) != null) {
+                    try {
+                        connection.write();
+                    } catch (IOException e) {
+                        connection.close(e.getMessage());
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now - nextSweep >= 0) {
+                    for (Connection open : new ArrayList<>(connections)) {
+                        open.checkTimeouts(now);
+                    }
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MILLIS);
+                }
+            }
+        } catch (IOException e) {
+            Log.error("TCP event loop I/O error: {}", e.getMessage());
+        } finally {
+            close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (connections.size() >= MAX_CONNECTIONS) {
+                try {
+                    // Одна строка на всплеск, а не на каждое отклонённое соединение
+                    if (!capacityReported) {
+                        capacityReported = true;
+                        Log.warn("Rejecting TCP connections: {} connections are open, last from {}",
+                                connections.size(), channel.getRemoteAddress());
+                    }
+                    channel.close();
+                } catch (IOException e) {
+                    Log.warn("Error closing TCP connection: {}", e.getMessage());
+                }
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+        }
+    }
+
+    public void close() {
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.close(null);
+        }
+        try {
+            selector.close();
+            serverChannel.close();
+        } catch (IOException e) {
+            Log.warn("Error closing TCP server channel: {}", e.getMessage());
+        }
+    }
+
+    public final class Connection {
+        private final SocketChannel channel;
+        private final SocketAddress remoteAddress;
+        private SelectionKey key;
+        // Заводится при первом чтении; большой буфер отдаётся, как только сообщение разобрано
+        private ByteBuffer readBuffer;
+        private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingBytes = new AtomicLong();
+        // Запросы, отданные обработчику и ещё не получившие ответа
+        private final AtomicInteger inProgress = new AtomicInteger();
+        // Поля ниже — только поток цикла
+        private boolean readPaused;
+        private long lastActive = System.nanoTime();
+        private long messageStartedAt; // 0 — начатого сообщения нет
+        private volatile boolean open = true;
+
+        private Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.remoteAddress = channel.getRemoteAddress();
+        }
+
+        public SocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        /**
+         * Ставит ответ в очередь соединения. Можно вызывать из любого потока.
+         */
+        public void send(long requestId, byte[] response) {
+            if (!open) {
+                return;
+            }
+            ByteBuffer message = StreamFraming.encode(requestId, response);
+            inProgress.decrementAndGet();
+            pendingBytes.addAndGet(message.remaining());
+            output.add(message);
+            writeReady.add(this);
+            if (wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        private void read() throws IOException {
+            if (readBuffer == null) {
+                readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+            }
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close(null);
+                return;
+            }
+            long now = System.nanoTime();
+            if (read > 0) {
+                lastActive = now;
+            }
+            readBuffer.flip();
+            boolean consumed = false;
+            while (readBuffer.remaining() >= Integer.BYTES) {
+                int length = readBuffer.getInt(readBuffer.position());
+                int bodyLength = StreamFraming.bodyLength(length, StreamFraming.MAX_REQUEST_SIZE);
+                if (readBuffer.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                readBuffer.getInt();
+                long requestId = readBuffer.getLong();
+                byte[] body = new byte[bodyLength];
+                readBuffer.get(body);
+                consumed = true;
+                inProgress.incrementAndGet();
+                handler.onRequest(this, requestId, ByteBuffer.wrap(body));
+            }
+            readBuffer.compact();
+            if (readBuffer.position() == 0) {
+                messageStartedAt = 0;
+                if (readBuffer.capacity() > INITIAL_READ_BUFFER_SIZE) {
+                    readBuffer = null;
+                }
+            } else {
+                if (consumed || messageStartedAt == 0) {
+                    messageStartedAt = now;
+                }
+                ensureCapacity();
+            }
+            updateInterest();
+        }
+
+        /**
+         * Растит заполненный буфер чтения вдвое, но не больше начатого сообщения:
+         * объявить большую длину мало, память выделяется под реально пришедшие байты.
+         */
+        private void ensureCapacity() throws ProtocolException {
+            if (readBuffer.hasRemaining()) {
+                return;
+            }
+            int length = readBuffer.getInt(0);
+            int needed = Integer.BYTES + Long.BYTES + StreamFraming.bodyLength(length, StreamFraming.MAX_REQUEST_SIZE);
+            if (needed > readBuffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate((int) Math.min(needed, 2L * readBuffer.capacity()));
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        private void checkTimeouts(long now) {
+            if (!readPaused && messageStartedAt != 0 && now - messageStartedAt > PARTIAL_MESSAGE_TIMEOUT_NANOS) {
+                close("request was not completed in "
+                        + TimeUnit.NANOSECONDS.toSeconds(PARTIAL_MESSAGE_TIMEOUT_NANOS) + " s");
+                return;
+            }
+            if (inProgress.get() == 0 && now - lastActive > IDLE_TIMEOUT_NANOS) {
+                // Ответы копятся, а клиент их не читает — это не простой, а зависший клиент
+                close(output.isEmpty() ? null : "client stopped reading responses");
+            }
+        }
+
+        private void write() throws IOException {
+            if (!open) {
+                return;
+            }
+            ByteBuffer message;
+            while ((message = output.peek()) != null) {
+                int written = channel.write(message);
+                pendingBytes.addAndGet(-written);
+                if (written > 0) {
+                    lastActive = System.nanoTime();
+                }
+                if (message.hasRemaining()) {
+                    break; // буфер сокета заполнен — продолжим по OP_WRITE
+                }
+                output.poll();
+            }
+            updateInterest();
+        }
+
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            long pending = pendingBytes.get();
+            if (!readPaused && pending > MAX_PENDING_OUTPUT) {
+                readPaused = true;
+            } else if (readPaused && pending <= MAX_PENDING_OUTPUT / 2) {
+                readPaused = false;
+                if (messageStartedAt != 0) {
+                    // Пока чтение стояло, сообщение не могло дойти — отсчёт заново
+                    messageStartedAt = System.nanoTime();
+                }
+            }
+            int ops = (readPaused ? 0 : SelectionKey.OP_READ) | (output.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+            key.interestOps(ops);
+        }
+
+        private void close(String reason) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            connections.remove(this);
+            capacityReported = false;
+            readBuffer = null;
+            if (reason != null) {
+                Log.warn("TCP connection {} closed: {}", remoteAddress, reason);
+            }
+            output.clear();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.warn("Error closing TCP connection: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example;
+
+/**
+ * Ограничитель скорости отправки одному клиенту. Скорость подстраивается
+ * по обратной связи: NACK (потеря фрагментов) вдвое снижает её, ACK
+ * (ответ доставлен целиком) постепенно возвращает к максимуму.
+ * Используется только потоком цикла событий, поэтому не синхронизирован.
+ */
+class TokenBucket {
+    static final long MIN_RATE = 256 * 1024;             // байт/с
+    static final long INITIAL_RATE = 64L * 1024 * 1024;
+    static final long MAX_RATE = 1024L * 1024 * 1024;
+    private static final long BURST_BYTES = 256 * 1024;
+    private static final long LOSS_HOLDOFF_NANOS = 100_000_000L; // одно снижение на «волну» NACK
+
+    private long rate = INITIAL_RATE;
+    private double tokens = BURST_BYTES;
+    private long lastRefill;
+    private long lastDecrease;
+
+    TokenBucket(long now) {
+        this.lastRefill = now;
+        this.lastDecrease = now - LOSS_HOLDOFF_NANOS;
+    }
+
+    boolean tryConsume(int bytes, long now) {
+        refill(now);
+        if (tokens < bytes) {
+            return false;
+        }
+        tokens -= bytes;
+        return true;
+    }
+
+    /**
+     * Возвращает токены датаграммы, которую не удалось отправить.
+     */
+    void refund(int bytes) {
+        tokens = Math.min(BURST_BYTES, tokens + bytes);
+    }
+
+    /**
+     * @return сколько наносекунд ждать, пока накопится {@code bytes} токенов
+     */
+    long nanosUntil(int bytes, long now) {
+        refill(now);
+        double deficit = bytes - tokens;
+        return deficit <= 0 ? 0 : (long) Math.ceil(deficit * 1_000_000_000L / rate);
+    }
+
+    void onLoss(long now) {
+        if (now - lastDecrease >= LOSS_HOLDOFF_NANOS) {
+            rate = Math.max(MIN_RATE, rate / 2);
+            lastDecrease = now;
+        }
+    }
+
+    void onDelivered() {
+        rate = Math.min(MAX_RATE, rate + rate / 8 + MIN_RATE);
+    }
+
+    long getRate() {
+        return rate;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(BURST_BYTES, tokens + elapsed * (double) rate / 1_000_000_000L);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Неблокирующий цикл приёма/отправки датаграмм на одном DatagramChannel.
+ * Весь ввод-вывод сокета выполняется в одном потоке; остальные потоки
+ * только ставят ответы в очередь через {@link #send(ByteBuffer, SocketAddress)}.
+ * Отправка каждому адресату ограничена своим {@link TokenBucket}: быстрый
+ * клиент получает ответ на полной скорости, а теряющий фрагменты — с паузами,
+ * которые выдерживает сам цикл через таймаут select, не занимая других потоков.
+ * <p>
+ * Несколько циклов могут слушать один порт с SO_REUSEPORT: ядро раскладывает
+ * клиентов по сокетам, и каждый клиент всегда попадает в один и тот же цикл.
+ */
+public class UdpEventLoop implements Runnable {
+
+    public interface PacketHandler {
+        /**
+         * @param packet принятая датаграмма (position..limit); буфер принадлежит циклу
+         *               и переиспользуется после возврата — нужное дальше обработчик копирует
+         */
+        void onPacket(UdpEventLoop loop, ByteBuffer packet, SocketAddress sender);
+    }
+
+    private static final int SOCKET_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_READS_PER_WAKEUP = 256;
+    private static final long IDLE_DESTINATION_NANOS = 30_000_000_000L;
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    // Один буфер приёма на цикл: датаграмма разбирается до приёма следующей
+    private final ByteBuffer receiveBuffer;
+    private final PacketHandler handler;
+    private final Queue<OutgoingDatagram> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Map<SocketAddress, Destination> destinations = new HashMap<>();
+    // Пишет только поток цикла, читают остальные — инкремент volatile без гонок
+    private volatile long datagramsIn;
+    private volatile long datagramsOut;
+    private volatile long bytesIn;
+    private volatile long bytesOut;
+    private volatile boolean running = true;
+
+    public UdpEventLoop(int port, int bufferSize, PacketHandler handler) throws IOException {
+        this(port, bufferSize, false, handler);
+    }
+
+    /**
+     * @param reusePort открыть сокет с SO_REUSEPORT, чтобы разделить порт с другими циклами
+     */
+    public UdpEventLoop(int port, int bufferSize, boolean reusePort, PacketHandler handler) throws IOException {
+        this.handler = handler;
+        this.receiveBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.selector = Selector.open();
+        this.channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_SIZE);
+            if (reusePort) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            this.key = channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            selector.close();
+            throw e;
+        }
+    }
+
+    public static boolean isReusePortSupported() {
+        try (DatagramChannel probe = DatagramChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void send(ByteBuffer data, SocketAddress target) {
+        enqueue(new OutgoingDatagram(data, null, target));
+    }
+
+    /**
+     * Отправляет кадр из пула целиком (0..limit). Цикл держит свою ссылку
+     * на буфер, пока датаграмма не уйдёт, так что вызывающий может сразу освободить свою.
+     */
+    public void send(BufferPool.Lease frame, SocketAddress target) {
+        enqueue(new OutgoingDatagram(frame.retain().buffer(), frame, target));
+    }
+
+    private void enqueue(OutgoingDatagram datagram) {
+        outbound.add(datagram);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Клиент сообщил о потерянных фрагментах. Вызывается из {@link PacketHandler}.
+     */
+    public void onLoss(SocketAddress target) {
+        long now = System.nanoTime();
+        destination(target, now).bucket.onLoss(now);
+    }
+
+    /**
+     * Клиент подтвердил получение ответа. Вызывается из {@link PacketHandler}.
+     */
+    public void onDelivered(SocketAddress target) {
+        destination(target, System.nanoTime()).bucket.onDelivered();
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public long getDatagramsIn() {
+        return datagramsIn;
+    }
+
+    public long getDatagramsOut() {
+        return datagramsOut;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    @Override
+    public void run() {
+        try {
+            long waitNanos = -1;
+            while (running) {
+                if (waitNanos < 0) {
+                    selector.select();
+                } else {
+                    selector.select(Math.max(1, (waitNanos + 999_999) / 1_000_000));
+                }
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey selected = keys.next();
+                    keys.remove();
+                    if (selected.isValid() && selected.isReadable()) {
+                        receivePackets();
+                    }
+                }
+
+                waitNanos = flushOutbound();
+            }
+        } catch (IOException e) {
+            Log.error("Event loop I/O error: {}", e.getMessage());
+        } finally {
+            close();
+        }
+    }
+
+    private void receivePackets() throws IOException {
+        for (int i = 0; i < MAX_READS_PER_WAKEUP; i++) {
+            receiveBuffer.clear();
+            SocketAddress sender = channel.receive(receiveBuffer);
+            if (sender == null) {
+                return;
+            }
+            receiveBuffer.flip();
+            datagramsIn++;
+            bytesIn += receiveBuffer.remaining();
+            try {
+                handler.onPacket(this, receiveBuffer, sender);
+            } catch (RuntimeException e) {
+                // Ошибка в обработке одной датаграммы не должна останавливать цикл
+                Log.error("Failed to handle datagram from {}: {}", sender, e);
+            }
+        }
+    }
+
+    /**
+     * Отправляет всё, что разрешают токены адресатов и буфер сокета.
+     *
+     * @return через сколько наносекунд появятся токены для следующей датаграммы, -1 — ждать нечего
+     */
+    private long flushOutbound() {
+        long now = System.nanoTime();
+        OutgoingDatagram datagram;
+        while ((datagram = outbound.poll()) != null) {
+            destination(datagram.target, now).queue.add(datagram);
+        }
+
+        long waitNanos = -1;
+        boolean socketFull = false;
+        Iterator<Destination> iterator = destinations.values().iterator();
+        while (iterator.hasNext()) {
+            Destination destination = iterator.next();
+            if (destination.queue.isEmpty()) {
+                if (now - destination.lastActive > IDLE_DESTINATION_NANOS) {
+                    iterator.remove();
+                }
+                continue;
+            }
+            if (socketFull) {
+                continue;
+            }
+
+            OutgoingDatagram data;
+            while ((data = destination.queue.peek()) != null) {
+                int size = data.data.remaining();
+                if (!destination.bucket.tryConsume(size, now)) {
+                    long wait = destination.bucket.nanosUntil(size, now);
+                    waitNanos = waitNanos < 0 ? wait : Math.min(waitNanos, wait);
+                    break;
+                }
+                try {
+                    if (channel.send(data.data, destination.address) == 0) {
+                        // Буфер сокета заполнен — дождёмся OP_WRITE
+                        destination.bucket.refund(size);
+                        socketFull = true;
+                        break;
+                    }
+                    datagramsOut++;
+                    bytesOut += size;
+                } catch (IOException e) {
+                    Log.warn("Failed to send datagram to {}: {}", destination.address, e.getMessage());
+                }
+                destination.queue.poll();
+                data.sent();
+                destination.lastActive = now;
+            }
+        }
+
+        key.interestOps(socketFull ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        return waitNanos;
+    }
+
+    private Destination destination(SocketAddress address, long now) {
+        Destination destination = destinations.get(address);
+        if (destination == null) {
+            destination = new Destination(address, now);
+            destinations.put(address, destination);
+        }
+        return destination;
+    }
+
+    public void close() {
+        for (Destination destination : destinations.values()) {
+            destination.queue.forEach(OutgoingDatagram::sent);
+        }
+        destinations.clear();
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            Log.warn("Error closing server channel: {}", e.getMessage());
+        }
+    }
+
+    private static final class Destination {
+        private final SocketAddress address;
+        private final TokenBucket bucket;
+        private final Queue<OutgoingDatagram> queue = new ArrayDeque<>();
+        private long lastActive;
+
+        private Destination(SocketAddress address, long now) {
+            this.address = address;
+            this.bucket = new TokenBucket(now);
+            this.lastActive = now;
+        }
+    }
+
+    private static final class OutgoingDatagram {
+        private final ByteBuffer data;
+        private final BufferPool.Lease lease;
+        private final SocketAddress target;
+
+        private OutgoingDatagram(ByteBuffer data, BufferPool.Lease lease, SocketAddress target) {
+            this.data = data;
+            this.lease = lease;
+            this.target = target;
+        }
+
+        /**
+         * Датаграмма ушла (или отброшена): кадр из пула готов к следующей отправке,
+         * ссылка цикла на него освобождается.
+         */
+        private void sent() {
+            if (lease != null) {
+                data.rewind();
+                lease.release();
+            }
+        }
+    }
+}
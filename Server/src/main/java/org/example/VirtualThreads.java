@@ -0,0 +1,22 @@
+package org.example;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Исполнитель «поток на запрос» на виртуальных потоках.
+ * Это базовая версия для Java 11–20, где виртуальных потоков нет; версия для
+ * Java 21+ лежит в src/main/java21 и попадает в META-INF/versions/21 multi-release jar.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    static ExecutorService newPerTaskExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+    }
+}
@@ -0,0 +1,199 @@
+package org.example;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AsyncAppenderTest extends TestCase {
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+
+    private static PrintStream print(ByteArrayOutputStream bytes) {
+        return new PrintStream(bytes, false, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> lines(ByteArrayOutputStream bytes) {
+        String text = bytes.toString(StandardCharsets.UTF_8);
+        return text.isEmpty() ? List.of() : Arrays.asList(text.split(System.lineSeparator()));
+    }
+
+    private static String format(String template, Object... args) {
+        StringBuilder line = new StringBuilder();
+        AsyncAppender.format(line, template, args);
+        return line.toString();
+    }
+
+    public void testFormatSubstitutesInOrder() {
+        assertEquals("a 1 b two", format("a {} b {}", 1, "two"));
+        assertEquals("1null", format("{}{}", 1, null));
+        assertEquals("null and null", format("{} and {}", null, null));
+        assertEquals("no placeholders", format("no placeholders"));
+    }
+
+    public void testFormatWithMissingArguments() {
+        assertEquals("a 1 b {}", format("a {} b {}", 1));
+        assertEquals("{} stays", format("{} stays"));
+        assertEquals("{} stays", format("{} stays", (Object[]) null));
+    }
+
+    public void testFormatWithExtraArguments() {
+        assertEquals("x 1 2 3", format("x {}", 1, 2, 3));
+        assertEquals("message 42", format("message", 42));
+    }
+
+    public void testLinesAreRoutedByLevel() {
+        AsyncAppender appender = new AsyncAppender(16, print(outBytes), print(errBytes));
+        assertTrue(appender.append(Log.Level.DEBUG, "debug {}", new Object[]{1}));
+        assertTrue(appender.append(Log.Level.INFO, "info {}", new Object[]{2}));
+        assertTrue(appender.append(Log.Level.WARN, "warn {}", new Object[]{3}));
+        assertTrue(appender.append(Log.Level.ERROR, "error {}", new Object[]{4}));
+        appender.close(CLOSE_TIMEOUT_MILLIS);
+
+        String thread = Thread.currentThread().getName();
+        List<String> out = lines(outBytes);
+        List<String> err = lines(errBytes);
+        assertEquals(2, out.size());
+        assertEquals(2, err.size());
+        String timestamp = "\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3} ";
+        assertTrue(out.get(0), out.get(0).matches(timestamp + "DEBUG \\[" + thread + "\\] debug 1"));
+        assertTrue(out.get(1), out.get(1).matches(timestamp + "INFO  \\[" + thread + "\\] info 2"));
+        assertTrue(err.get(0), err.get(0).matches(timestamp + "WARN  \\[" + thread + "\\] warn 3"));
+        assertTrue(err.get(1), err.get(1).matches(timestamp + "ERROR \\[" + thread + "\\] error 4"));
+        assertEquals(0, appender.dropped());
+    }
+
+    public void testCloseWritesEverythingBuffered() {
+        AsyncAppender appender = new AsyncAppender(4096, print(outBytes), print(errBytes));
+        for (int i = 0; i < 3000; i++) {
+            assertTrue(appender.append(Log.Level.INFO, "line {}", new Object[]{i}));
+        }
+        appender.close(CLOSE_TIMEOUT_MILLIS);
+
+        List<String> out = lines(outBytes);
+        assertEquals(3000, out.size());
+        for (int i = 0; i < out.size(); i++) {
+            assertTrue(out.get(i).endsWith("] line " + i));
+        }
+    }
+
+    public void testOverflowIsDroppedAndReported() throws Exception {
+        GatedStream gated = new GatedStream();
+        // Ёмкость 4: поток записи застрянет на первой строке, заняв её ячейку
+        AsyncAppender appender = new AsyncAppender(4, print(gated), print(errBytes));
+        assertTrue(appender.append(Log.Level.INFO, "first", null));
+        assertTrue(gated.entered.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(appender.append(Log.Level.INFO, "queued {}", new Object[]{i}));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertFalse(appender.append(Log.Level.INFO, "dropped {}", new Object[]{i}));
+        }
+        assertEquals(5, appender.dropped());
+
+        gated.gate.countDown();
+        appender.close(CLOSE_TIMEOUT_MILLIS);
+
+        List<String> out = lines(gated);
+        assertEquals(4, out.size());
+        assertTrue(out.get(0).endsWith("] first"));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(out.get(i + 1).endsWith("] queued " + i));
+        }
+        List<String> err = lines(errBytes);
+        assertEquals(1, err.size());
+        assertTrue(err.get(0), err.get(0).endsWith("[log-writer] Log buffer overflow: dropped 5 lines"));
+    }
+
+    public void testConcurrentProducers() throws Exception {
+        AsyncAppender appender = new AsyncAppender(1024, print(outBytes), print(errBytes));
+        int threads = 8;
+        int perThread = 20_000;
+        AtomicLong rejected = new AtomicLong();
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int producer = t;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    if (!appender.append(Log.Level.INFO, "p{} n{}", new Object[]{producer, i})) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            }, "producer-" + t);
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        appender.close(CLOSE_TIMEOUT_MILLIS);
+
+        assertEquals(rejected.get(), appender.dropped());
+        List<String> out = lines(outBytes);
+        assertEquals((long) threads * perThread, out.size() + appender.dropped());
+
+        // Каждая строка целая, без повторов, и строки одного потока идут в порядке записи
+        Set<String> seen = new HashSet<>();
+        int[] last = new int[threads];
+        Arrays.fill(last, -1);
+        for (String line : out) {
+            String message = line.substring(line.indexOf("] ") + 2);
+            assertTrue(line, message.matches("p\\d n\\d+"));
+            assertTrue(line, seen.add(message));
+            int producer = message.charAt(1) - '0';
+            int number = Integer.parseInt(message.substring(message.indexOf('n') + 1));
+            assertTrue(line, number > last[producer]);
+            assertTrue(line, line.contains("[producer-" + producer + "]"));
+            last[producer] = number;
+        }
+
+        if (appender.dropped() > 0) {
+            long reported = lines(errBytes).stream()
+                    .filter(line -> line.contains("Log buffer overflow"))
+                    .mapToLong(line -> Long.parseLong(line.replaceAll(".*dropped (\\d+) lines", "$1")))
+                    .sum();
+            assertEquals(appender.dropped(), reported);
+        } else {
+            assertEquals(List.of(), lines(errBytes));
+        }
+    }
+
+    /**
+     * Поток, запись в который ждёт открытия gate; entered — запись началась.
+     */
+    private static final class GatedStream extends ByteArrayOutputStream {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            pass();
+            super.write(data, offset, length);
+        }
+
+        @Override
+        public void write(int b) {
+            pass();
+            super.write(b);
+        }
+
+        private void pass() {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
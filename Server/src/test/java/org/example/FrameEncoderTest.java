@@ -0,0 +1,114 @@
+package org.example;
+
+import data.Response;
+import junit.framework.TestCase;
+import network.ChunkAssembler;
+import network.Frame;
+import network.WireCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class FrameEncoderTest extends TestCase {
+    private static final long REQUEST_ID = 7L;
+
+    private final BufferPool smallFrames = new BufferPool(2048, 16);
+    private final BufferPool largeFrames = new BufferPool(Frame.HEADER_SIZE + Frame.MAX_PAYLOAD, 16);
+    private final FrameEncoder encoder = new FrameEncoder(smallFrames, largeFrames);
+
+    private static String repeated(int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append("MusicBand{id=").append(text.length()).append(", name='band'}\n");
+        }
+        return text.substring(0, length);
+    }
+
+    private static String random(int length) {
+        Random random = new Random(length);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('!' + random.nextInt(90)));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Собирает ответ из кадров так же, как клиент, и освобождает аренды.
+     */
+    private static Response decode(BufferPool.Lease[] frames) throws Exception {
+        ChunkAssembler assembler = new ChunkAssembler(REQUEST_ID);
+        for (BufferPool.Lease frame : frames) {
+            Frame decoded = Frame.decode(frame.buffer().duplicate());
+            assertEquals(Frame.Type.DATA, decoded.getType());
+            assertEquals(frames.length, decoded.getCount());
+            assembler.add(decoded);
+        }
+        assertTrue(assembler.isComplete());
+        Response response = WireCodec.decodeResponse(ByteBuffer.wrap(assembler.assemble()));
+        for (BufferPool.Lease frame : frames) {
+            frame.release();
+        }
+        return response;
+    }
+
+    private static boolean deflated(BufferPool.Lease[] frames) throws Exception {
+        return Frame.decode(frames[0].buffer().duplicate()).hasFlag(Frame.FLAG_DEFLATED);
+    }
+
+    public void testShortResponseUsesSmallFrame() throws Exception {
+        BufferPool.Lease[] frames = encoder.encode(REQUEST_ID, true, new Response("ok"));
+        assertEquals(1, frames.length);
+        assertEquals(2048, frames[0].buffer().capacity());
+        assertFalse(deflated(frames));
+        assertEquals("ok", decode(frames).getText());
+    }
+
+    public void testBufferedResponseIsCompressedWhenSmaller() throws Exception {
+        String text = repeated(10_000);
+        BufferPool.Lease[] frames = encoder.encode(REQUEST_ID, true, new Response(text));
+        assertEquals(1, frames.length);
+        assertTrue(deflated(frames));
+        // Сжатый ответ помещается в маленький кадр
+        assertEquals(2048, frames[0].buffer().capacity());
+        assertEquals(text, decode(frames).getText());
+
+        frames = encoder.encode(REQUEST_ID, false, new Response(text));
+        assertFalse(deflated(frames));
+        assertEquals(text, decode(frames).getText());
+    }
+
+    public void testLargeResponseIsSplitIntoFrames() throws Exception {
+        String text = random(200_000);
+        BufferPool.Lease[] frames = encoder.encode(REQUEST_ID, false, new Response(text));
+        assertEquals(4, frames.length);
+        for (int i = 0; i < frames.length - 1; i++) {
+            assertEquals(Frame.HEADER_SIZE + Frame.MAX_PAYLOAD, frames[i].buffer().remaining());
+        }
+        assertEquals(text, decode(frames).getText());
+    }
+
+    public void testLargeResponseIsDeflatedWhileEncoding() throws Exception {
+        String text = repeated(1_000_000);
+        BufferPool.Lease[] frames = encoder.encode(REQUEST_ID, true, new Response(text));
+        assertTrue(deflated(frames));
+        assertTrue(frames.length < 1_000_000 / Frame.MAX_PAYLOAD);
+        assertEquals(text, decode(frames).getText());
+    }
+
+    public void testEncoderIsReusable() throws Exception {
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            results.add(repeated(50 + i));
+        }
+        for (int round = 0; round < 3; round++) {
+            assertEquals(results, decode(encoder.encode(REQUEST_ID, round == 1, Response.batch(results))).getResults());
+            assertEquals("short", decode(encoder.encode(REQUEST_ID, true, new Response("short"))).getText());
+        }
+        // Все аренды вернулись в пулы
+        assertEquals(1, smallFrames.pooled());
+        assertTrue(largeFrames.pooled() >= 1);
+    }
+}